@@ -0,0 +1,138 @@
+package greendb;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.jrender.database.DatabaseConnection;
+import com.jrender.database.DatabasePreparedStatement;
+import com.jrender.database.DatabaseStatement;
+
+import greendb.annotation.Table;
+
+final class BenchmarkDatabase {
+	private final static AtomicInteger databases = new AtomicInteger();
+
+	final Class<?> model;
+	final String table;
+	final DatabaseConnection connection;
+
+	BenchmarkDatabase(int width, int rows) throws Exception {
+		this.model = Class.forName("greendb.Wide"+width);
+		this.table = model.getAnnotation(Table.class).value();
+		this.connection = wrap(DriverManager.getConnection("jdbc:h2:mem:bench"+databases.incrementAndGet()));
+
+		execute(ddl());
+		GreenDB.insert(connection, rows(0, rows));
+	}
+
+	private String ddl() {
+		StringBuilder q = new StringBuilder("CREATE TABLE ").append(table).append(" (id INT AUTO_INCREMENT PRIMARY KEY");
+		for (Field f : columns())
+			q.append(", ").append(f.getName()).append(' ').append(sqlType(f.getType()));
+		return q.append(")").toString();
+	}
+
+	private static String sqlType(Class<?> type) {
+		if(type == int.class)
+			return "INT";
+		if(type == long.class)
+			return "BIGINT";
+		if(type == double.class)
+			return "DOUBLE";
+		if(type == Timestamp.class)
+			return "TIMESTAMP";
+		return "VARCHAR(64)";
+	}
+
+	private List<Field> columns() {
+		List<Field> columns = new ArrayList<Field>();
+		for (Field f : model.getDeclaredFields()) {
+			if(Modifier.isStatic(f.getModifiers()) || f.getName().equals("id"))
+				continue;
+			f.setAccessible(true);
+			columns.add(f);
+		}
+		return columns;
+	}
+
+	Object row(int i) throws IllegalAccessException, InstantiationException {
+		Object o = model.newInstance();
+		for (Field f : columns()) {
+			Class<?> type = f.getType();
+			if(type == int.class)
+				f.setInt(o, i);
+			else if(type == long.class)
+				f.setLong(o, i * 31L);
+			else if(type == double.class)
+				f.setDouble(o, i / 7.0);
+			else if(type == Timestamp.class)
+				f.set(o, new Timestamp(i * 1000L));
+			else
+				f.set(o, "v"+i);
+		}
+		return o;
+	}
+
+	List<Object> rows(int from, int count) throws IllegalAccessException, InstantiationException {
+		List<Object> rows = new ArrayList<Object>(count);
+		for (int i = -1; ++i < count;)
+			rows.add(row(from + i));
+		return rows;
+	}
+
+	void execute(String sql) throws SQLException {
+		Statement st = connection.createStatement();
+		try {
+			st.execute(sql);
+		} finally {
+			st.close();
+		}
+	}
+
+	void close() throws SQLException {
+		GreenDB.closeStatements(connection);
+		connection.close();
+	}
+
+	private static DatabaseConnection wrap(Connection connection) {
+		return (DatabaseConnection) proxy(DatabaseConnection.class, connection);
+	}
+
+	private static Object proxy(Class<?> type, final Object target) {
+		return Proxy.newProxyInstance(BenchmarkDatabase.class.getClassLoader(), new Class<?>[] {type}, new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				if(method.getName().equals("equals") && args != null && args.length == 1)
+					return proxy == args[0];
+				if(method.getName().equals("hashCode") && args == null)
+					return System.identityHashCode(proxy);
+
+				Object result;
+				try {
+					result = target.getClass().getMethod(method.getName(), method.getParameterTypes()).invoke(target, args);
+				} catch (InvocationTargetException e) {
+					throw e.getCause();
+				}
+
+				if(method.getReturnType() == DatabasePreparedStatement.class)
+					return proxy(DatabasePreparedStatement.class, (PreparedStatement) result);
+				if(method.getReturnType() == DatabaseStatement.class)
+					return proxy(DatabaseStatement.class, (Statement) result);
+
+				return result;
+			}
+		});
+	}
+}
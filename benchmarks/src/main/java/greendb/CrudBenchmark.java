@@ -0,0 +1,111 @@
+package greendb;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CrudBenchmark {
+	@Param({"5", "20", "50"})
+	int width;
+
+	@Param({"1000"})
+	int rows;
+
+	@Param({"32"})
+	int batch;
+
+	BenchmarkDatabase db;
+
+	private int next;
+
+	@Setup(Level.Trial)
+	public void open() throws Exception {
+		GreenDB.getQueryCache().setCapacity(0);
+		db = new BenchmarkDatabase(width, rows);
+	}
+
+	@Setup(Level.Iteration)
+	public void trim() throws Exception {
+		db.execute("DELETE FROM "+db.table+" WHERE id > "+rows);
+		next = rows;
+	}
+
+	@TearDown(Level.Trial)
+	public void close() throws Exception {
+		db.close();
+	}
+
+	private int randomId() {
+		return ThreadLocalRandom.current().nextInt(rows) + 1;
+	}
+
+	@Benchmark
+	public List<?> findAll() throws Exception {
+		return GreenDB.findAll(db.connection, db.model);
+	}
+
+	@Benchmark
+	public Object findByPK() throws Exception {
+		return GreenDB.findByPK(db.connection, db.model, null, randomId());
+	}
+
+	@Benchmark
+	public List<?> findByColumns() throws Exception {
+		return GreenDB.findByColumns(db.connection, db.model, false, null, new String[] {"c1"}, null, "v"+(randomId() - 1));
+	}
+
+	@Benchmark
+	public boolean insert() throws Exception {
+		return GreenDB.insert(db.connection, db.row(++next));
+	}
+
+	@Benchmark
+	public boolean insertList() throws Exception {
+		List<Object> list = db.rows(next, batch);
+		next += batch;
+		return GreenDB.insert(db.connection, list);
+	}
+
+	@Benchmark
+	public boolean update() throws Exception {
+		Object o = db.row(randomId());
+		EntityMeta.of(db.model).pkAccessors[0].set(o, randomId());
+		return GreenDB.update(db.connection, o);
+	}
+
+	@Benchmark
+	public boolean delete(Doomed doomed) throws Exception {
+		return GreenDB.delete(db.connection, doomed.row);
+	}
+
+	@State(Scope.Thread)
+	public static class Doomed {
+		Object row;
+
+		@Setup(Level.Invocation)
+		public void insert(CrudBenchmark benchmark) throws Exception {
+			row = benchmark.db.row(++benchmark.next);
+			GreenDB.insert(benchmark.db.connection, row);
+		}
+	}
+}
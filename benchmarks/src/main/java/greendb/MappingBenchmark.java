@@ -0,0 +1,108 @@
+package greendb;
+
+import java.lang.reflect.Field;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetProvider;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import greendb.annotation.Column;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MappingBenchmark {
+	@Param({"5", "20", "50"})
+	int width;
+
+	@Param({"1000"})
+	int rows;
+
+	private CachedRowSet rs;
+	private Class<?> model;
+	private EntityMeta meta;
+	private List<Field> fields;
+
+	@Setup(Level.Trial)
+	public void load() throws Exception {
+		BenchmarkDatabase db = new BenchmarkDatabase(width, rows);
+		try {
+			Statement st = db.connection.createStatement();
+			try {
+				rs = RowSetProvider.newFactory().createCachedRowSet();
+				rs.populate(st.executeQuery("SELECT * FROM "+db.table));
+			} finally {
+				st.close();
+			}
+		} finally {
+			db.close();
+		}
+
+		model = db.model;
+		meta = EntityMeta.of(model);
+
+		fields = new ArrayList<Field>();
+		for (Field f : model.getDeclaredFields()) {
+			if(f.isAnnotationPresent(Column.class)) {
+				f.setAccessible(true);
+				fields.add(f);
+			}
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void close() throws Exception {
+		rs.close();
+	}
+
+	@Benchmark
+	public void buildObject(Blackhole bh) throws Exception {
+		rs.beforeFirst();
+		Object o;
+		while((o = GreenDB.buildObject(rs, model)) != null)
+			bh.consume(o);
+	}
+
+	@Benchmark
+	public void accessors(Blackhole bh) throws Exception {
+		rs.beforeFirst();
+		RowMapper<Object> mapper = RowMapper.of(meta, rs, null);
+		Object o;
+		while((o = mapper.next(rs)) != null)
+			bh.consume(o);
+	}
+
+	@Benchmark
+	public void reflection(Blackhole bh) throws Exception {
+		rs.beforeFirst();
+		while(rs.next()) {
+			Object instance = model.newInstance();
+			for (Field f : fields) {
+				Column c = f.getAnnotation(Column.class);
+				f.set(instance, rs.getObject(c.value().isEmpty() ? f.getName() : c.value()));
+			}
+			bh.consume(instance);
+		}
+	}
+}
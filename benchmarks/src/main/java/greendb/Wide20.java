@@ -0,0 +1,33 @@
+package greendb;
+
+import java.sql.Timestamp;
+
+import greendb.annotation.Column;
+import greendb.annotation.PK;
+import greendb.annotation.Table;
+
+@Table("wide20")
+public class Wide20 {
+	@PK(autoIncrement = true) @Column int id;
+	@Column String c1;
+	@Column long c2;
+	@Column double c3;
+	@Column Timestamp c4;
+	@Column int c5;
+	@Column String c6;
+	@Column long c7;
+	@Column double c8;
+	@Column Timestamp c9;
+	@Column int c10;
+	@Column String c11;
+	@Column long c12;
+	@Column double c13;
+	@Column Timestamp c14;
+	@Column int c15;
+	@Column String c16;
+	@Column long c17;
+	@Column double c18;
+	@Column Timestamp c19;
+
+	public Wide20() {}
+}
@@ -0,0 +1,18 @@
+package greendb;
+
+import java.sql.Timestamp;
+
+import greendb.annotation.Column;
+import greendb.annotation.PK;
+import greendb.annotation.Table;
+
+@Table("wide5")
+public class Wide5 {
+	@PK(autoIncrement = true) @Column int id;
+	@Column String c1;
+	@Column long c2;
+	@Column double c3;
+	@Column Timestamp c4;
+
+	public Wide5() {}
+}
@@ -0,0 +1,63 @@
+package greendb;
+
+import java.sql.Timestamp;
+
+import greendb.annotation.Column;
+import greendb.annotation.PK;
+import greendb.annotation.Table;
+
+@Table("wide50")
+public class Wide50 {
+	@PK(autoIncrement = true) @Column int id;
+	@Column String c1;
+	@Column long c2;
+	@Column double c3;
+	@Column Timestamp c4;
+	@Column int c5;
+	@Column String c6;
+	@Column long c7;
+	@Column double c8;
+	@Column Timestamp c9;
+	@Column int c10;
+	@Column String c11;
+	@Column long c12;
+	@Column double c13;
+	@Column Timestamp c14;
+	@Column int c15;
+	@Column String c16;
+	@Column long c17;
+	@Column double c18;
+	@Column Timestamp c19;
+	@Column int c20;
+	@Column String c21;
+	@Column long c22;
+	@Column double c23;
+	@Column Timestamp c24;
+	@Column int c25;
+	@Column String c26;
+	@Column long c27;
+	@Column double c28;
+	@Column Timestamp c29;
+	@Column int c30;
+	@Column String c31;
+	@Column long c32;
+	@Column double c33;
+	@Column Timestamp c34;
+	@Column int c35;
+	@Column String c36;
+	@Column long c37;
+	@Column double c38;
+	@Column Timestamp c39;
+	@Column int c40;
+	@Column String c41;
+	@Column long c42;
+	@Column double c43;
+	@Column Timestamp c44;
+	@Column int c45;
+	@Column String c46;
+	@Column long c47;
+	@Column double c48;
+	@Column Timestamp c49;
+
+	public Wide50() {}
+}
@@ -0,0 +1,147 @@
+package greendb;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.jrender.database.DatabaseConnection;
+
+public final class AsyncGreenDB {
+
+	public interface Operation<T> {
+		public T execute(DatabaseConnection connection) throws SQLException;
+	}
+
+	private final ConnectionSource source;
+	private final ExecutorService executor;
+	private final Semaphore permits;
+	private final boolean ownsExecutor;
+
+	public AsyncGreenDB(ConnectionSource source, int maxConcurrency) {
+		this(source, maxConcurrency, pool(maxConcurrency), true);
+	}
+
+	public AsyncGreenDB(ConnectionSource source, int maxConcurrency, ExecutorService executor) {
+		this(source, maxConcurrency, executor, false);
+	}
+
+	private AsyncGreenDB(ConnectionSource source, int maxConcurrency, ExecutorService executor, boolean ownsExecutor) {
+		if(maxConcurrency < 1)
+			throw new IllegalArgumentException("Invalid concurrency: "+maxConcurrency);
+
+		this.source = source;
+		this.executor = executor;
+		this.permits = new Semaphore(maxConcurrency, true);
+		this.ownsExecutor = ownsExecutor;
+	}
+
+	private static ExecutorService pool(int maxConcurrency) {
+		if(maxConcurrency < 1)
+			throw new IllegalArgumentException("Invalid concurrency: "+maxConcurrency);
+
+		return Executors.newFixedThreadPool(maxConcurrency, new DaemonThreadFactory());
+	}
+
+	public <T> Future<T> submit(final Operation<T> operation) {
+		return executor.submit(new Callable<T>() {
+			public T call() throws Exception {
+				permits.acquire();
+				try {
+					DatabaseConnection connection = source.getConnection();
+					try {
+						return operation.execute(connection);
+					} finally {
+						source.release(connection);
+					}
+				} finally {
+					permits.release();
+				}
+			}
+		});
+	}
+
+	public <E> Future<List<E>> findAllAsync(Class<E> model) {
+		return findAllAsync(model, null, null);
+	}
+
+	public <E> Future<List<E>> findAllAsync(final Class<E> model, final String[] fieldNames, final String[] orderByColumnNames) {
+		return submit(new Operation<List<E>>() {
+			public List<E> execute(DatabaseConnection connection) throws SQLException {
+				return GreenDB.findAll(connection, model, fieldNames, orderByColumnNames);
+			}
+		});
+	}
+
+	public <E> Future<E> findByPKAsync(final Class<E> model, final Object... values) {
+		return submit(new Operation<E>() {
+			public E execute(DatabaseConnection connection) throws SQLException {
+				return GreenDB.findByPK(connection, model, null, values);
+			}
+		});
+	}
+
+	public <E> Future<List<E>> findByColumnsAsync(final Class<E> model, final String[] selectColumnNames, final String[] whereColumnNames, final String[] groupColumnNames, final Object... values) {
+		return submit(new Operation<List<E>>() {
+			public List<E> execute(DatabaseConnection connection) throws SQLException {
+				return GreenDB.findByColumns(connection, model, selectColumnNames, whereColumnNames, groupColumnNames, values);
+			}
+		});
+	}
+
+	public Future<Boolean> insertAsync(final Object model) {
+		return submit(new Operation<Boolean>() {
+			public Boolean execute(DatabaseConnection connection) throws SQLException {
+				return GreenDB.insert(connection, model);
+			}
+		});
+	}
+
+	public Future<Boolean> updateAsync(final Object model) {
+		return submit(new Operation<Boolean>() {
+			public Boolean execute(DatabaseConnection connection) throws SQLException {
+				return GreenDB.update(connection, model);
+			}
+		});
+	}
+
+	public Future<Boolean> upsertAsync(final Object model) {
+		return submit(new Operation<Boolean>() {
+			public Boolean execute(DatabaseConnection connection) throws SQLException {
+				return GreenDB.upsert(connection, model);
+			}
+		});
+	}
+
+	public Future<Boolean> deleteAsync(final Object model) {
+		return submit(new Operation<Boolean>() {
+			public Boolean execute(DatabaseConnection connection) throws SQLException {
+				return GreenDB.delete(connection, model);
+			}
+		});
+	}
+
+	public int getAvailablePermits() {
+		return permits.availablePermits();
+	}
+
+	public void shutdown() {
+		if(ownsExecutor)
+			executor.shutdown();
+	}
+
+	private static final class DaemonThreadFactory implements ThreadFactory {
+		private final AtomicInteger count = new AtomicInteger();
+
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "greendb-async-"+count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	}
+}
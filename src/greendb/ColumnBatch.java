@@ -0,0 +1,401 @@
+package greendb;
+
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+public final class ColumnBatch {
+	public enum Type {
+		INT, LONG, DOUBLE, STRING, OBJECT
+	}
+
+	private final static int INITIAL_CAPACITY = 1024;
+
+	private final String[] fieldNames;
+	private final Vector[] vectors;
+	private int size;
+
+	private ColumnBatch(String[] fieldNames, Vector[] vectors) {
+		this.fieldNames = fieldNames;
+		this.vectors = vectors;
+	}
+
+	static ColumnBatch of(EntityMeta meta, String[] fieldNames) throws SQLException {
+		Vector[] vectors = new Vector[fieldNames.length];
+		for (int i = -1; ++i < fieldNames.length;) {
+			int c = meta.indexOfField(fieldNames[i]);
+			if(c == -1)
+				throw new SQLException("Field "+fieldNames[i]+" not mapped in: "+meta.model.getName());
+
+			vectors[i] = Vector.of(meta.columns[c]);
+		}
+
+		return new ColumnBatch(fieldNames.clone(), vectors);
+	}
+
+	void read(ResultSet rs) throws SQLException {
+		int capacity = INITIAL_CAPACITY;
+		for (Vector v : vectors)
+			v.grow(capacity);
+
+		while(rs.next()) {
+			if(size == capacity) {
+				capacity <<= 1;
+				for (Vector v : vectors)
+					v.grow(capacity);
+			}
+
+			for (int c = -1; ++c < vectors.length;)
+				vectors[c].read(rs, c + 1, size);
+			size++;
+		}
+
+		for (Vector v : vectors)
+			v.trim(size);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int getColumnCount() {
+		return vectors.length;
+	}
+
+	public String[] getFieldNames() {
+		return fieldNames.clone();
+	}
+
+	public int indexOf(String fieldName) {
+		for (int i = -1; ++i < fieldNames.length;) {
+			if(fieldNames[i].equals(fieldName))
+				return i;
+		}
+		return -1;
+	}
+
+	public Type getType(int column) {
+		return vectors[column].type;
+	}
+
+	public boolean isNull(int column, int row) {
+		return (vectors[column].nulls[row >>> 6] & (1L << row)) != 0;
+	}
+
+	public int getNullCount(int column) {
+		int count = 0;
+		for (long word : vectors[column].nulls)
+			count += Long.bitCount(word);
+		return count;
+	}
+
+	public int getInt(int column, int row) {
+		return ints(column)[row];
+	}
+
+	public long getLong(int column, int row) {
+		return longs(column)[row];
+	}
+
+	public double getDouble(int column, int row) {
+		return doubles(column)[row];
+	}
+
+	public String getString(int column, int row) {
+		StringVector v = strings(column);
+		return isNull(column, row) ? null : v.dictionary[v.codes[row]];
+	}
+
+	public Object getObject(int column, int row) {
+		return isNull(column, row) ? null : vectors[column].get(row);
+	}
+
+	public int[] getInts(int column) {
+		return ints(column);
+	}
+
+	public long[] getLongs(int column) {
+		return longs(column);
+	}
+
+	public double[] getDoubles(int column) {
+		return doubles(column);
+	}
+
+	public int[] getCodes(int column) {
+		return strings(column).codes;
+	}
+
+	public String[] getDictionary(int column) {
+		return strings(column).dictionary.clone();
+	}
+
+	public long[] getNulls(int column) {
+		return vectors[column].nulls;
+	}
+
+	private int[] ints(int column) {
+		return ((IntVector) expect(column, Type.INT)).values;
+	}
+
+	private long[] longs(int column) {
+		return ((LongVector) expect(column, Type.LONG)).values;
+	}
+
+	private double[] doubles(int column) {
+		return ((DoubleVector) expect(column, Type.DOUBLE)).values;
+	}
+
+	private StringVector strings(int column) {
+		return (StringVector) expect(column, Type.STRING);
+	}
+
+	private Vector expect(int column, Type type) {
+		Vector v = vectors[column];
+		if(v.type != type)
+			throw new IllegalStateException("Column "+fieldNames[column]+" is "+v.type+", not "+type);
+
+		return v;
+	}
+
+	private static abstract class Vector {
+		final Type type;
+		long[] nulls;
+
+		Vector(Type type) {
+			this.type = type;
+		}
+
+		static Vector of(Field field) {
+			Class<?> t = field.getType();
+			if(t == int.class || t == Integer.class || t == short.class || t == Short.class || t == byte.class || t == Byte.class)
+				return new IntVector();
+			if(t == boolean.class || t == Boolean.class)
+				return new BooleanVector();
+			if(t == long.class || t == Long.class)
+				return new LongVector();
+			if(t == double.class || t == Double.class || t == float.class || t == Float.class || t == BigDecimal.class)
+				return new DoubleVector();
+			if(Date.class.isAssignableFrom(t))
+				return new DateVector();
+			if(t == String.class || t == char.class || t == Character.class || t.isEnum())
+				return new StringVector();
+
+			return new ObjectVector();
+		}
+
+		void grow(int capacity) {
+			nulls = nulls == null ? new long[(capacity + 63) >>> 6] : Arrays.copyOf(nulls, (capacity + 63) >>> 6);
+		}
+
+		void trim(int size) {
+			nulls = Arrays.copyOf(nulls, (size + 63) >>> 6);
+		}
+
+		final void setNull(int row) {
+			nulls[row >>> 6] |= 1L << row;
+		}
+
+		abstract void read(ResultSet rs, int column, int row) throws SQLException;
+
+		abstract Object get(int row);
+	}
+
+	private static class IntVector extends Vector {
+		int[] values;
+
+		IntVector() {
+			super(Type.INT);
+		}
+
+		void grow(int capacity) {
+			super.grow(capacity);
+			values = values == null ? new int[capacity] : Arrays.copyOf(values, capacity);
+		}
+
+		void trim(int size) {
+			super.trim(size);
+			values = Arrays.copyOf(values, size);
+		}
+
+		void read(ResultSet rs, int column, int row) throws SQLException {
+			int v = rs.getInt(column);
+			if(v == 0 && rs.wasNull())
+				setNull(row);
+			else
+				values[row] = v;
+		}
+
+		Object get(int row) {
+			return values[row];
+		}
+	}
+
+	private static final class BooleanVector extends IntVector {
+		void read(ResultSet rs, int column, int row) throws SQLException {
+			boolean v = rs.getBoolean(column);
+			if(!v && rs.wasNull())
+				setNull(row);
+			else
+				values[row] = v ? 1 : 0;
+		}
+
+		Object get(int row) {
+			return values[row] != 0;
+		}
+	}
+
+	private static class LongVector extends Vector {
+		long[] values;
+
+		LongVector() {
+			super(Type.LONG);
+		}
+
+		void grow(int capacity) {
+			super.grow(capacity);
+			values = values == null ? new long[capacity] : Arrays.copyOf(values, capacity);
+		}
+
+		void trim(int size) {
+			super.trim(size);
+			values = Arrays.copyOf(values, size);
+		}
+
+		void read(ResultSet rs, int column, int row) throws SQLException {
+			long v = rs.getLong(column);
+			if(v == 0 && rs.wasNull())
+				setNull(row);
+			else
+				values[row] = v;
+		}
+
+		Object get(int row) {
+			return values[row];
+		}
+	}
+
+	private static final class DateVector extends LongVector {
+		void read(ResultSet rs, int column, int row) throws SQLException {
+			Timestamp t = rs.getTimestamp(column);
+			if(t == null)
+				setNull(row);
+			else
+				values[row] = t.getTime();
+		}
+
+		Object get(int row) {
+			return new Timestamp(values[row]);
+		}
+	}
+
+	private static final class DoubleVector extends Vector {
+		double[] values;
+
+		DoubleVector() {
+			super(Type.DOUBLE);
+		}
+
+		void grow(int capacity) {
+			super.grow(capacity);
+			values = values == null ? new double[capacity] : Arrays.copyOf(values, capacity);
+		}
+
+		void trim(int size) {
+			super.trim(size);
+			values = Arrays.copyOf(values, size);
+		}
+
+		void read(ResultSet rs, int column, int row) throws SQLException {
+			double v = rs.getDouble(column);
+			if(v == 0 && rs.wasNull())
+				setNull(row);
+			else
+				values[row] = v;
+		}
+
+		Object get(int row) {
+			return values[row];
+		}
+	}
+
+	private static final class StringVector extends Vector {
+		int[] codes;
+		String[] dictionary = new String[16];
+		private Map<String, Integer> index = new HashMap<String, Integer>();
+
+		StringVector() {
+			super(Type.STRING);
+		}
+
+		void grow(int capacity) {
+			super.grow(capacity);
+			codes = codes == null ? new int[capacity] : Arrays.copyOf(codes, capacity);
+		}
+
+		void trim(int size) {
+			super.trim(size);
+			codes = Arrays.copyOf(codes, size);
+			dictionary = Arrays.copyOf(dictionary, index.size());
+			index = null;
+		}
+
+		void read(ResultSet rs, int column, int row) throws SQLException {
+			String v = rs.getString(column);
+			if(v == null) {
+				setNull(row);
+				return;
+			}
+
+			Integer code = index.get(v);
+			if(code == null) {
+				code = index.size();
+				if(code == dictionary.length)
+					dictionary = Arrays.copyOf(dictionary, code << 1);
+				dictionary[code] = v;
+				index.put(v, code);
+			}
+			codes[row] = code;
+		}
+
+		Object get(int row) {
+			return dictionary[codes[row]];
+		}
+	}
+
+	private static final class ObjectVector extends Vector {
+		Object[] values;
+
+		ObjectVector() {
+			super(Type.OBJECT);
+		}
+
+		void grow(int capacity) {
+			super.grow(capacity);
+			values = values == null ? new Object[capacity] : Arrays.copyOf(values, capacity);
+		}
+
+		void trim(int size) {
+			super.trim(size);
+			values = Arrays.copyOf(values, size);
+		}
+
+		void read(ResultSet rs, int column, int row) throws SQLException {
+			Object v = rs.getObject(column);
+			if(v == null)
+				setNull(row);
+			else
+				values[row] = v;
+		}
+
+		Object get(int row) {
+			return values[row];
+		}
+	}
+}
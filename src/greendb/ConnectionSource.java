@@ -0,0 +1,20 @@
+package greendb;
+
+import java.sql.SQLException;
+
+import com.jrender.database.DatabaseConnection;
+import com.jrender.kernel.JRenderContext;
+
+public interface ConnectionSource {
+
+	public final static ConnectionSource CONTEXT = new ConnectionSource() {
+		public DatabaseConnection getConnection() throws SQLException {
+			return JRenderContext.getInstance().getDatabaseConnection();
+		}
+
+		public void release(DatabaseConnection connection) {}
+	};
+
+	public DatabaseConnection getConnection() throws SQLException;
+	public void release(DatabaseConnection connection) throws SQLException;
+}
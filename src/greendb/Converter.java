@@ -0,0 +1,12 @@
+package greendb;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+public interface Converter<T> {
+
+	T read(ResultSet rs, int column) throws SQLException;
+
+	void bind(PreparedStatement ps, int index, T value) throws SQLException;
+}
@@ -0,0 +1,150 @@
+package greendb;
+
+import java.lang.reflect.Field;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import greendb.annotation.Ordinal;
+
+final class Converters {
+	private final static ConcurrentMap<Class<?>, Converter<?>> registered = new ConcurrentHashMap<Class<?>, Converter<?>>();
+	private final static ConcurrentMap<Class<?>, Converter<?>> enums = new ConcurrentHashMap<Class<?>, Converter<?>>();
+	private final static ConcurrentMap<Class<?>, Converter<?>> ordinals = new ConcurrentHashMap<Class<?>, Converter<?>>();
+
+	private final static Converter<Timestamp> TIMESTAMP = new Converter<Timestamp>() {
+		public Timestamp read(ResultSet rs, int column) throws SQLException {
+			return rs.getTimestamp(column);
+		}
+
+		public void bind(PreparedStatement ps, int index, Timestamp value) throws SQLException {
+			ps.setTimestamp(index, value);
+		}
+	};
+
+	private final static Converter<java.sql.Date> SQL_DATE = new Converter<java.sql.Date>() {
+		public java.sql.Date read(ResultSet rs, int column) throws SQLException {
+			Timestamp t = rs.getTimestamp(column);
+			return t == null ? null : new java.sql.Date(t.getTime());
+		}
+
+		public void bind(PreparedStatement ps, int index, java.sql.Date value) throws SQLException {
+			ps.setTimestamp(index, new Timestamp(value.getTime()));
+		}
+	};
+
+	private final static Converter<Date> DATE = new Converter<Date>() {
+		public Date read(ResultSet rs, int column) throws SQLException {
+			Timestamp t = rs.getTimestamp(column);
+			return t == null ? null : new Date(t.getTime());
+		}
+
+		public void bind(PreparedStatement ps, int index, Date value) throws SQLException {
+			ps.setTimestamp(index, value instanceof Timestamp ? (Timestamp) value : new Timestamp(value.getTime()));
+		}
+	};
+
+	private Converters() {}
+
+	static<T> void register(Class<T> type, Converter<T> converter) {
+		if(converter == null)
+			registered.remove(type);
+		else
+			registered.put(type, converter);
+	}
+
+	static Converter<?> of(Field field) {
+		Class<?> type = field.getType();
+		if(type.isEnum())
+			return ofEnum(type, field.isAnnotationPresent(Ordinal.class));
+
+		return of(type);
+	}
+
+	static Converter<?> of(Class<?> type) {
+		Converter<?> converter = registered.get(type);
+		if(converter != null)
+			return converter;
+
+		if(type.isEnum())
+			return ofEnum(type, false);
+		if(type == Timestamp.class)
+			return TIMESTAMP;
+		if(type == java.sql.Date.class)
+			return SQL_DATE;
+		if(type == Date.class)
+			return DATE;
+
+		return null;
+	}
+
+	@SuppressWarnings("unchecked")
+	static void bind(PreparedStatement ps, int index, Object value) throws SQLException {
+		Converter<Object> converter = null;
+		if(value instanceof Enum)
+			converter = (Converter<Object>) ofEnum(((Enum<?>) value).getDeclaringClass(), false);
+		else if(value != null && !registered.isEmpty())
+			converter = (Converter<Object>) registered.get(value.getClass());
+
+		if(converter == null)
+			ps.setObject(index, value);
+		else
+			converter.bind(ps, index, value);
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static Converter<?> ofEnum(Class<?> type, boolean ordinal) {
+		Converter<?> converter = registered.get(type);
+		if(converter != null)
+			return converter;
+
+		ConcurrentMap<Class<?>, Converter<?>> cache = ordinal ? ordinals : enums;
+		converter = cache.get(type);
+		if(converter == null) {
+			converter = new EnumConverter((Class<Enum>) type, ordinal);
+			Converter<?> old = cache.putIfAbsent(type, converter);
+			if(old != null)
+				converter = old;
+		}
+		return converter;
+	}
+
+	private static final class EnumConverter<E extends Enum<E>> implements Converter<E> {
+		private final Class<E> type;
+		private final E[] constants;
+		private final boolean ordinal;
+
+		EnumConverter(Class<E> type, boolean ordinal) {
+			this.type = type;
+			this.constants = type.getEnumConstants();
+			this.ordinal = ordinal;
+		}
+
+		public E read(ResultSet rs, int column) throws SQLException {
+			if(!ordinal) {
+				String name = rs.getString(column);
+				return name == null ? null : Enum.valueOf(type, name);
+			}
+
+			int i = rs.getInt(column);
+			if(rs.wasNull())
+				return null;
+
+			if(i < 0 || i >= constants.length)
+				throw new SQLException("Ordinal "+i+" out of range in: "+type.getName());
+
+			return constants[i];
+		}
+
+		public void bind(PreparedStatement ps, int index, E value) throws SQLException {
+			if(ordinal)
+				ps.setInt(index, value.ordinal());
+			else
+				ps.setString(index, value.name());
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package greendb;
+
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import com.jrender.database.DatabaseConnection;
+
+public enum Dialect {
+	GENERIC(false),
+	MYSQL(true),
+	POSTGRESQL(true),
+	H2(true),
+	HSQLDB(true),
+	SQLITE(true),
+	DB2(true),
+	DERBY(false),
+	ORACLE(false),
+	SQLSERVER(false);
+
+	private final static Map<DatabaseConnection, Dialect> dialects = new WeakHashMap<DatabaseConnection, Dialect>();
+
+	private static volatile Dialect forced;
+
+	final boolean rowValues;
+
+	private Dialect(boolean rowValues) {
+		this.rowValues = rowValues;
+	}
+
+	void limit(StringBuilder q) {
+		switch (this) {
+			case MYSQL:
+			case POSTGRESQL:
+			case H2:
+			case HSQLDB:
+			case SQLITE:
+				q.append(" LIMIT ?");
+				break;
+			case SQLSERVER:
+				q.append(" OFFSET 0 ROWS FETCH NEXT ? ROWS ONLY");
+				break;
+			default:
+				q.append(" FETCH FIRST ? ROWS ONLY");
+		}
+	}
+
+	boolean hasUpsert() {
+		return this != GENERIC && this != DERBY;
+	}
+
+	String nextValueSql(String sequence) throws SQLException {
+		switch (this) {
+			case POSTGRESQL:
+				return "SELECT nextval('"+sequence+"')";
+			case ORACLE:
+				return "SELECT "+sequence+".NEXTVAL FROM DUAL";
+			case MYSQL:
+				return "SELECT NEXTVAL("+sequence+")";
+			case HSQLDB:
+			case DB2:
+			case DERBY:
+				return "VALUES NEXT VALUE FOR "+sequence;
+			case SQLITE:
+				throw new SQLException("Sequences not supported by "+this+", use the HILO generator");
+			default:
+				return "SELECT NEXT VALUE FOR "+sequence;
+		}
+	}
+
+	public static void setDialect(Dialect dialect) {
+		forced = dialect;
+	}
+
+	public static void setDialect(DatabaseConnection connection, Dialect dialect) {
+		synchronized (dialects) {
+			dialects.put(connection, dialect);
+		}
+	}
+
+	public static Dialect of(DatabaseConnection connection) throws SQLException {
+		Dialect dialect = forced;
+		if(dialect != null)
+			return dialect;
+
+		synchronized (dialects) {
+			dialect = dialects.get(connection);
+			if(dialect == null) {
+				dialect = detect(connection.getMetaData().getDatabaseProductName());
+				dialects.put(connection, dialect);
+			}
+		}
+		return dialect;
+	}
+
+	static Dialect detect(String productName) {
+		String name = productName == null ? "" : productName.toLowerCase();
+
+		if(name.contains("mysql") || name.contains("mariadb"))
+			return MYSQL;
+		if(name.contains("postgres"))
+			return POSTGRESQL;
+		if(name.equals("h2"))
+			return H2;
+		if(name.contains("hsql"))
+			return HSQLDB;
+		if(name.contains("sqlite"))
+			return SQLITE;
+		if(name.startsWith("db2"))
+			return DB2;
+		if(name.contains("derby"))
+			return DERBY;
+		if(name.contains("oracle"))
+			return ORACLE;
+		if(name.contains("microsoft sql server"))
+			return SQLSERVER;
+
+		return GENERIC;
+	}
+}
@@ -0,0 +1,145 @@
+package greendb;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+public final class EntityCache {
+	private final EntityMeta meta;
+	private final Segment[] segments;
+	private final int mask;
+	private final long ttl;
+
+	private final AtomicLong version = new AtomicLong();
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	EntityCache(EntityMeta meta, int maxEntries, long ttl) {
+		this.meta = meta;
+		this.ttl = ttl;
+
+		int count = 1;
+		while(count < Runtime.getRuntime().availableProcessors() * 2 && count < 64 && count * 2 <= maxEntries)
+			count <<= 1;
+
+		this.segments = new Segment[count];
+		this.mask = count - 1;
+
+		int capacity = Math.max(1, (maxEntries + count - 1) / count);
+		for (int i = -1; ++i < count;)
+			segments[i] = new Segment(capacity);
+	}
+
+	private Segment segment(EntityKey key) {
+		int h = key.hashCode();
+		h ^= (h >>> 16);
+		return segments[h & mask];
+	}
+
+	<E> E get(EntityKey key) {
+		Segment s = segment(key);
+		CacheEntry e;
+		synchronized (s) {
+			e = s.get(key);
+			if(e != null && ttl > 0 && e.expiresAt < System.currentTimeMillis()) {
+				s.remove(key);
+				evictions.incrementAndGet();
+				e = null;
+			}
+		}
+
+		if(e == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+
+		hits.incrementAndGet();
+		return meta.restore(e.values);
+	}
+
+	long version() {
+		return version.get();
+	}
+
+	void put(EntityKey key, Object entity, long version) {
+		CacheEntry e = new CacheEntry(meta.detach(entity), ttl > 0 ? System.currentTimeMillis() + ttl : 0);
+
+		Segment s = segment(key);
+		synchronized (s) {
+			if(version == this.version.get())
+				s.put(key, e);
+		}
+	}
+
+	void remove(EntityKey key) {
+		version.incrementAndGet();
+
+		Segment s = segment(key);
+		synchronized (s) {
+			s.remove(key);
+		}
+	}
+
+	public void clear() {
+		version.incrementAndGet();
+
+		for (Segment s : segments) {
+			synchronized (s) {
+				s.clear();
+			}
+		}
+	}
+
+	public int size() {
+		int size = 0;
+		for (Segment s : segments) {
+			synchronized (s) {
+				size += s.size();
+			}
+		}
+		return size;
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	private static final class CacheEntry {
+		final Object[] values;
+		final long expiresAt;
+
+		CacheEntry(Object[] values, long expiresAt) {
+			this.values = values;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+	private final class Segment extends LinkedHashMap<EntityKey, CacheEntry> {
+		private static final long serialVersionUID = 1L;
+
+		private final int capacity;
+
+		Segment(int capacity) {
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+		}
+
+		protected boolean removeEldestEntry(Map.Entry<EntityKey, CacheEntry> eldest) {
+			if(size() <= capacity)
+				return false;
+
+			evictions.incrementAndGet();
+			return true;
+		}
+	}
+}
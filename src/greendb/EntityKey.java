@@ -0,0 +1,66 @@
+package greendb;
+
+import java.util.Arrays;
+
+final class EntityKey {
+	private final Class<?> model;
+	private final Object[] values;
+	private final int hash;
+
+	EntityKey(Class<?> model, Object[] values) {
+		this.model = model;
+		this.values = values;
+		for (int i = -1; ++i < values.length;)
+			values[i] = normalize(values[i]);
+
+		this.hash = model.hashCode() * 31 + Arrays.hashCode(values);
+	}
+
+	static EntityKey of(Class<?> model, Object... values) {
+		return new EntityKey(model, values.clone());
+	}
+
+	static EntityKey of(EntityMeta meta, Object entity) {
+		FieldAccessor[] accessors = meta.pkAccessors;
+		if(accessors.length == 0)
+			return null;
+
+		Object[] values = new Object[accessors.length];
+		for (int i = -1; ++i < accessors.length;) {
+			if((values[i] = accessors[i].get(entity)) == null)
+				return null;
+		}
+
+		return new EntityKey(meta.model, values);
+	}
+
+	private static Object normalize(Object value) {
+		if(value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte)
+			return ((Number) value).longValue();
+
+		return value;
+	}
+
+	Class<?> getModel() {
+		return model;
+	}
+
+	Object[] getValues() {
+		return values;
+	}
+
+	public int hashCode() {
+		return hash;
+	}
+
+	public boolean equals(Object o) {
+		if(this == o)
+			return true;
+
+		if(!(o instanceof EntityKey))
+			return false;
+
+		EntityKey k = (EntityKey) o;
+		return hash == k.hash && model == k.model && Arrays.equals(values, k.values);
+	}
+}
@@ -0,0 +1,22 @@
+package greendb;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+public interface EntityMapper<E> {
+
+	Class<E> getModel();
+
+	String[] getFieldNames();
+
+	E newInstance();
+
+	Object get(E entity, int field);
+
+	void set(E entity, int field, Object value);
+
+	void read(E entity, int field, ResultSet rs, int column) throws SQLException;
+
+	void bind(E entity, int field, PreparedStatement ps, int index) throws SQLException;
+}
@@ -0,0 +1,725 @@
+package greendb;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.jrender.database.DatabaseConnection;
+import com.jrender.exception.JRenderError;
+
+import greendb.annotation.Cacheable;
+import greendb.annotation.Column;
+import greendb.annotation.Generator;
+import greendb.annotation.PK;
+import greendb.annotation.Table;
+
+final class EntityMeta {
+	private final static ConcurrentMap<Class<?>, EntityMeta> metas = new ConcurrentHashMap<Class<?>, EntityMeta>();
+
+	private final static int SELECT = 0, SELECT_BY_PK = 1, SELECT_BY_COLUMNS = 2, UPDATE = 3, DELETE = 4, INSERT = 5, DELETE_IN = 6, RANGE = 7, BOUNDS = 8, PAGE = 9, UPSERT = 10, SELECT_IN = 11;
+
+	final Class<?> model;
+	final String table;
+
+	final Field[] columns;
+	final String[] columnNames;
+	final Field[] pks;
+	final String[] pkNames;
+	final Field[] conditions;
+	final String[] conditionNames;
+
+	final Field[] ownColumns;
+	final String[] ownColumnNames;
+	final Field[] ownPks;
+	final boolean[] ownUpdatable;
+	final Field autoIncrement;
+	final Field generated;
+	final int insertColumnCount;
+
+	final FieldAccessor[] accessors;
+	final FieldAccessor[] pkAccessors;
+	final FieldAccessor[] conditionAccessors;
+	final FieldAccessor[] ownAccessors;
+	final FieldAccessor[] ownPkAccessors;
+	final FieldAccessor autoIncrementAccessor;
+	final FieldAccessor generatedAccessor;
+	final IdAllocator idAllocator;
+
+	final Relation[] relations;
+	final String[] eager;
+
+	final Snapshots snapshots;
+	final EntityCache cache;
+
+	private final EntityMapper<Object> mapper;
+	private final Constructor<?> constructor;
+
+	volatile RowMapper<?> lastMapper;
+
+	private final ConcurrentMap<SqlKey, String> sqls = new ConcurrentHashMap<SqlKey, String>();
+
+	@SuppressWarnings("unchecked")
+	private EntityMeta(Class<?> model) {
+		this.model = model;
+		this.mapper = (EntityMapper<Object>) Mappers.of(model);
+
+		Table t = model.getAnnotation(Table.class);
+		this.table = t == null ? null : t.value();
+
+		this.columns = GreenDB.getColumns(model, true);
+		this.columnNames = columnNames(columns);
+		this.pks = GreenDB.getPKs(model, true);
+		this.pkNames = columnNames(pks);
+		this.conditions = pks.length == 0 ? columns : pks;
+		this.conditionNames = pks.length == 0 ? columnNames : pkNames;
+
+		this.ownColumns = GreenDB.getColumns(model, false);
+		this.ownColumnNames = columnNames(ownColumns);
+		this.ownPks = GreenDB.getPKs(model, false);
+		this.ownUpdatable = new boolean[ownColumns.length];
+
+		Field autoIncrement = null, generated = null;
+		IdAllocator idAllocator = null;
+		for (int i = -1; ++i < ownColumns.length;) {
+			Field f = ownColumns[i];
+			PK pk = f.getAnnotation(PK.class);
+			if(pk != null && pk.generator() != Generator.NONE) {
+				generated = f;
+				idAllocator = IdAllocator.of(table, pk);
+			} else if(pk != null && pk.autoIncrement())
+				autoIncrement = f;
+
+			ownUpdatable[i] = pk == null && f.getAnnotation(Column.class).updatable();
+		}
+		this.autoIncrement = autoIncrement;
+		this.generated = generated;
+		this.idAllocator = idAllocator;
+		this.insertColumnCount = autoIncrement == null ? ownColumns.length : ownColumns.length - 1;
+
+		this.accessors = FieldAccessor.of(columns, mapper);
+		this.pkAccessors = FieldAccessor.of(pks, mapper);
+		this.conditionAccessors = pks.length == 0 ? accessors : pkAccessors;
+		this.ownAccessors = FieldAccessor.of(ownColumns, mapper);
+		this.ownPkAccessors = FieldAccessor.of(ownPks, mapper);
+		this.autoIncrementAccessor = autoIncrement == null ? null : FieldAccessor.of(autoIncrement, mapper);
+		this.generatedAccessor = generated == null ? null : FieldAccessor.of(generated, mapper);
+		this.relations = Relation.of(GreenDB.getRelations(model));
+		this.eager = Relation.eager(relations);
+		this.snapshots = t != null && t.trackChanges() ? new Snapshots(ownAccessors) : null;
+
+		Cacheable cacheable = model.getAnnotation(Cacheable.class);
+		this.cache = cacheable != null && t != null && pks.length > 0 ? new EntityCache(this, cacheable.maxEntries(), cacheable.ttl()) : null;
+
+		Constructor<?> constructor;
+		try {
+			constructor = model.getDeclaredConstructor();
+			constructor.setAccessible(true);
+		} catch (NoSuchMethodException e) {
+			constructor = null;
+		}
+		this.constructor = constructor;
+	}
+
+	@SuppressWarnings("unchecked")
+	<E> E newInstance() {
+		if(mapper != null)
+			return (E) mapper.newInstance();
+
+		if(constructor == null)
+			throw new JRenderError("No default constructor in: "+model.getName());
+
+		try {
+			return (E) constructor.newInstance();
+		} catch (Exception e) {
+			throw new JRenderError(e);
+		}
+	}
+
+	Object[] detach(Object entity) {
+		Object[] values = new Object[accessors.length];
+		for (int i = -1; ++i < values.length;)
+			values[i] = Snapshots.copy(accessors[i].get(entity));
+
+		return values;
+	}
+
+	<E> E restore(Object[] values) {
+		E instance = newInstance();
+		for (int i = -1; ++i < values.length;)
+			accessors[i].set(instance, Snapshots.copy(values[i]));
+
+		if(snapshots != null)
+			snapshots.take(instance);
+
+		return instance;
+	}
+
+	static EntityMeta of(Class<?> model) {
+		EntityMeta meta = metas.get(model);
+		if(meta == null) {
+			meta = new EntityMeta(model);
+			EntityMeta old = metas.putIfAbsent(model, meta);
+			if(old != null)
+				meta = old;
+		}
+
+		return meta;
+	}
+
+	static EntityMeta mapping(Class<?> type) {
+		for (EntityMeta meta : metas.values()) {
+			for (Field f : meta.columns) {
+				if(f.getType() == type)
+					return meta;
+			}
+		}
+		return null;
+	}
+
+	static EntityMeta forTable(Class<?> model) throws SQLException {
+		EntityMeta meta = of(model);
+		if(meta.table == null)
+			throw new SQLException("Table name not defined in: "+model.getName());
+
+		return meta;
+	}
+
+	static String columnName(Field f) {
+		Column c = f.getAnnotation(Column.class);
+		return c.value().isEmpty() ? f.getName() : c.value();
+	}
+
+	private static String[] columnNames(Field[] fields) {
+		String[] names = new String[fields.length];
+		for (int i = -1; ++i < fields.length;)
+			names[i] = columnName(fields[i]);
+
+		return names;
+	}
+
+	Relation relation(String name) {
+		for (Relation r : relations) {
+			if(r.name.equals(name))
+				return r;
+		}
+		return null;
+	}
+
+	int indexOfField(String fieldName) {
+		for (int i = -1; ++i < columns.length;) {
+			if(columns[i].getName().equals(fieldName))
+				return i;
+		}
+		return -1;
+	}
+
+	String selectSql(String[] fieldNames, String[] orderByColumnNames) {
+		SqlKey key = new SqlKey(SELECT, fieldNames, orderByColumnNames);
+		String sql = sqls.get(key);
+		if(sql == null) {
+			StringBuilder q = new StringBuilder("SELECT ");
+			appendProjection(q, fieldNames);
+			q.append(" FROM ").append(table);
+
+			if(orderByColumnNames != null) {
+				q.append(" ORDER BY ").append(orderByColumnNames[0]);
+				for(int i = 0; ++i < orderByColumnNames.length;) {
+					q.append(",").append(orderByColumnNames[i]);
+				}
+			}
+
+			sql = cache(key, q);
+		}
+		return sql;
+	}
+
+	String boundsSql(String columnName) {
+		SqlKey key = new SqlKey(BOUNDS, columnName);
+		String sql = sqls.get(key);
+		if(sql == null) {
+			StringBuilder q = new StringBuilder("SELECT MIN(").append(columnName).append("),MAX(").append(columnName).append(") FROM ").append(table);
+			sql = cache(key, q);
+		}
+		return sql;
+	}
+
+	String rangeSql(String[] fieldNames, String columnName) {
+		SqlKey key = new SqlKey(RANGE, fieldNames, columnName);
+		String sql = sqls.get(key);
+		if(sql == null) {
+			StringBuilder q = new StringBuilder("SELECT ");
+			appendProjection(q, fieldNames);
+			q.append(" FROM ").append(table).append(" WHERE ").append(columnName).append(" >= ? AND ").append(columnName).append(" <= ?");
+			sql = cache(key, q);
+		}
+		return sql;
+	}
+
+	String pageSql(String[] orderColumnNames, boolean after, Dialect dialect) {
+		SqlKey key = new SqlKey(PAGE, orderColumnNames, after, dialect);
+		String sql = sqls.get(key);
+		if(sql == null) {
+			StringBuilder q = new StringBuilder("SELECT * FROM ").append(table);
+
+			if(after) {
+				q.append(" WHERE ");
+				if(orderColumnNames.length == 1)
+					q.append(orderColumnNames[0]).append(" > ?");
+				else if(dialect.rowValues) {
+					q.append("(");
+					for (int i = -1; ++i < orderColumnNames.length;) {
+						if(i > 0)
+							q.append(",");
+						q.append(orderColumnNames[i]);
+					}
+					q.append(") > (");
+					for (int i = -1; ++i < orderColumnNames.length;) {
+						if(i > 0)
+							q.append(",");
+						q.append("?");
+					}
+					q.append(")");
+				} else {
+					for (int i = -1; ++i < orderColumnNames.length;) {
+						if(i > 0)
+							q.append(" OR ");
+						q.append("(");
+						for (int j = -1; ++j < i;)
+							q.append(orderColumnNames[j]).append(" = ? AND ");
+						q.append(orderColumnNames[i]).append(" > ?)");
+					}
+				}
+			}
+
+			q.append(" ORDER BY ");
+			for (int i = -1; ++i < orderColumnNames.length;) {
+				if(i > 0)
+					q.append(",");
+				q.append(orderColumnNames[i]);
+			}
+
+			dialect.limit(q);
+
+			sql = cache(key, q);
+		}
+		return sql;
+	}
+
+	int indexOfColumn(String columnName) {
+		for (int i = -1; ++i < columnNames.length;) {
+			if(columnNames[i].equalsIgnoreCase(columnName))
+				return i;
+		}
+		return -1;
+	}
+
+	String selectByPKSql(String[] fieldNames) {
+		SqlKey key = new SqlKey(SELECT_BY_PK, fieldNames);
+		String sql = sqls.get(key);
+		if(sql == null) {
+			StringBuilder q = new StringBuilder("SELECT ");
+			appendProjection(q, fieldNames);
+			q.append(" FROM ").append(table).append(" WHERE ");
+
+			for (int i = -1; ++i < pkNames.length;) {
+				if(i > 0)
+					q.append(" and ");
+				q.append(pkNames[i]).append(" = ?");
+			}
+
+			sql = cache(key, q);
+		}
+		return sql;
+	}
+
+	String selectByColumnsSql(String[] selectColumnNames, String[] whereColumnNames, String[] groupColumnNames, boolean[] nulls) {
+		SqlKey key = new SqlKey(SELECT_BY_COLUMNS, selectColumnNames, whereColumnNames, groupColumnNames, nulls);
+		String sql = sqls.get(key);
+		if(sql == null) {
+			StringBuilder q = new StringBuilder("SELECT ");
+			appendProjection(q, selectColumnNames);
+			q.append(" FROM ").append(table).append(" WHERE ");
+
+			int i = -1;
+			for (String name : columnNames) {
+				for(String columnName: whereColumnNames) {
+					if(columnName.equals(name)) {
+						if(++i > 0)
+							q.append(" and ");
+
+						q.append(name).append(nulls[i] ? " is null" : " = ?");
+					}
+				}
+			}
+
+			if(groupColumnNames != null) {
+				q.append(" GROUP BY ");
+				for(i = -1; ++i < groupColumnNames.length;) {
+					if(i > 0)
+						q.append(',');
+					q.append(groupColumnNames[i]);
+				}
+			}
+
+			sql = cache(key, q);
+		}
+		return sql;
+	}
+
+	FieldAccessor[] whereAccessors(String[] whereColumnNames) {
+		List<FieldAccessor> where = new ArrayList<FieldAccessor>(whereColumnNames.length);
+		for (int i = -1; ++i < columnNames.length;) {
+			for (String columnName : whereColumnNames) {
+				if(columnName.equals(columnNames[i]))
+					where.add(accessors[i]);
+			}
+		}
+		return where.toArray(new FieldAccessor[where.size()]);
+	}
+
+	String updateSql(String[] fieldNames) {
+		SqlKey key = new SqlKey(UPDATE, fieldNames);
+		String sql = sqls.get(key);
+		if(sql == null) {
+			StringBuilder q = new StringBuilder("UPDATE ").append(table).append(" SET ");
+
+			List<String> listFieldNames = Arrays.asList(fieldNames);
+
+			int i = -1;
+			for (int c = -1; ++c < ownColumns.length;) {
+				if(!isUpdated(c, fieldNames, listFieldNames))
+					continue;
+
+				if(++i > 0)
+					q.append(",");
+
+				q.append(ownColumnNames[c]).append("=").append("?");
+			}
+
+			q.append(" WHERE ");
+
+			i = -1;
+			for (Field f : ownPks) {
+				if(++i > 0)
+					q.append(" AND ");
+				q.append(columnName(f)).append("=").append("?");
+			}
+
+			sql = cache(key, q);
+		}
+		return sql;
+	}
+
+	String[] changedColumns(Object[] snapshot, Object entity) {
+		List<String> changed = new ArrayList<String>();
+		for (int c = -1; ++c < ownColumns.length;) {
+			if(ownUpdatable[c] && snapshots.isChanged(snapshot, c, entity))
+				changed.add(ownColumnNames[c]);
+		}
+		return changed.toArray(new String[changed.size()]);
+	}
+
+	boolean isUpdated(int ownColumn, String[] fieldNames, List<String> listFieldNames) {
+		return ownUpdatable[ownColumn] && (fieldNames.length == 0 || listFieldNames.indexOf(ownColumnNames[ownColumn]) != -1);
+	}
+
+	String deleteSql(String[] ignoreFields, int rows, boolean[] nulls) {
+		if(rows > 1)
+			return buildDeleteSql(ignoreFields, rows, nulls).toString();
+
+		SqlKey key = new SqlKey(DELETE, rows, ignoreFields, nulls);
+		String sql = sqls.get(key);
+		if(sql == null)
+			sql = cache(key, buildDeleteSql(ignoreFields, rows, nulls));
+
+		return sql;
+	}
+
+	private StringBuilder buildDeleteSql(String[] ignoreFields, int rows, boolean[] nulls) {
+		StringBuilder q = new StringBuilder("DELETE FROM ").append(table).append(" WHERE ");
+
+		int v = -1;
+		for (int i = -1; ++i < rows;) {
+			if(i > 0)
+				q.append(" OR ");
+
+			int i2 = -1;
+			for (String fieldName : conditionNames) {
+				if(isIgnored(fieldName, ignoreFields))
+					continue;
+
+				if(++i2 > 0)
+					q.append(" AND ");
+
+				q.append(fieldName).append(nulls[++v] ? " is null" : "=?");
+			}
+		}
+		return q;
+	}
+
+	String selectInSql(String columnName, int size) {
+		SqlKey key = new SqlKey(SELECT_IN, columnName, size);
+		String sql = sqls.get(key);
+		if(sql == null) {
+			StringBuilder q = new StringBuilder("SELECT * FROM ").append(table).append(" WHERE ").append(columnName).append(" IN (");
+			appendParameters(q, size);
+			q.append(")");
+
+			sql = cache(key, q);
+		}
+		return sql;
+	}
+
+	String deleteInSql(int size) {
+		SqlKey key = new SqlKey(DELETE_IN, size);
+		String sql = sqls.get(key);
+		if(sql == null) {
+			StringBuilder q = new StringBuilder("DELETE FROM ").append(table).append(" WHERE ").append(pkNames[0]).append(" IN (");
+
+			for (int i = -1; ++i < size;) {
+				if(i > 0)
+					q.append(",");
+				q.append("?");
+			}
+			q.append(")");
+
+			sql = cache(key, q);
+		}
+		return sql;
+	}
+
+	static boolean isIgnored(String fieldName, String[] ignoreFields) {
+		if(ignoreFields != null) {
+			for (String _fieldName : ignoreFields) {
+				if(fieldName.equals(_fieldName))
+					return true;
+			}
+		}
+		return false;
+	}
+
+	String insertSql(int rows) {
+		SqlKey key = new SqlKey(INSERT, rows);
+		String sql = sqls.get(key);
+		if(sql == null) {
+			StringBuilder q = new StringBuilder("INSERT INTO ").append(table).append("(");
+
+			boolean first = true;
+			for (int i = -1; ++i < ownColumns.length;) {
+				if(ownColumns[i] == autoIncrement)
+					continue;
+
+				if(!first)
+					q.append(",");
+
+				q.append(ownColumnNames[i]);
+				first = false;
+			}
+			q.append(") VALUES");
+
+			for (int i = -1; ++i < rows;) {
+				if(i > 0)
+					q.append(",");
+
+				q.append("(");
+				for (int j = -1; ++j < insertColumnCount;) {
+					if(j > 0)
+						q.append(",");
+					q.append("?");
+				}
+				q.append(")");
+			}
+
+			sql = cache(key, q);
+		}
+		return sql;
+	}
+
+	void assignIds(DatabaseConnection connection, List<?> rows) throws SQLException {
+		Class<?> type = generated.getType();
+		for (Object o : rows) {
+			if(GreenDB.isUnassigned(generatedAccessor.get(o)))
+				generatedAccessor.set(o, idAllocator.next(connection, type));
+		}
+	}
+
+	boolean hasUpdatable() {
+		for (boolean updatable : ownUpdatable) {
+			if(updatable)
+				return true;
+		}
+		return false;
+	}
+
+	String upsertSql(Dialect dialect) {
+		SqlKey key = new SqlKey(UPSERT, dialect);
+		String sql = sqls.get(key);
+		if(sql == null) {
+			StringBuilder q = new StringBuilder();
+			String[] pks = columnNames(ownPks);
+
+			switch (dialect) {
+				case MYSQL:
+					appendInsert(q.append("INSERT INTO "));
+					q.append(" ON DUPLICATE KEY UPDATE ");
+					if(hasUpdatable())
+						appendAssignments(q, "VALUES(", ")");
+					else
+						q.append(pks[0]).append("=").append(pks[0]);
+					break;
+				case POSTGRESQL:
+				case SQLITE:
+					appendInsert(q.append("INSERT INTO "));
+					q.append(" ON CONFLICT (");
+					appendList(q, pks, "");
+					q.append(")");
+					if(hasUpdatable())
+						appendAssignments(q.append(" DO UPDATE SET "), "EXCLUDED.", "");
+					else
+						q.append(" DO NOTHING");
+					break;
+				default:
+					q.append("MERGE INTO ").append(table).append(" t USING (");
+					if(dialect == Dialect.ORACLE) {
+						q.append("SELECT ");
+						for (int i = -1; ++i < ownColumnNames.length;) {
+							if(i > 0)
+								q.append(",");
+							q.append("? ").append(ownColumnNames[i]);
+						}
+						q.append(" FROM DUAL) s");
+					} else {
+						q.append("VALUES (");
+						appendParameters(q, ownColumnNames.length);
+						q.append(")) s(");
+						appendList(q, ownColumnNames, "");
+						q.append(")");
+					}
+
+					q.append(" ON (");
+					for (int i = -1; ++i < pks.length;) {
+						if(i > 0)
+							q.append(" AND ");
+						q.append("t.").append(pks[i]).append("=s.").append(pks[i]);
+					}
+					q.append(")");
+
+					if(hasUpdatable())
+						appendAssignments(q.append(" WHEN MATCHED THEN UPDATE SET "), "s.", "");
+
+					q.append(" WHEN NOT MATCHED THEN INSERT (");
+					appendList(q, ownColumnNames, "");
+					q.append(") VALUES (");
+					appendList(q, ownColumnNames, "s.");
+					q.append(")");
+
+					if(dialect == Dialect.SQLSERVER)
+						q.append(";");
+			}
+
+			sql = cache(key, q);
+		}
+		return sql;
+	}
+
+	private void appendInsert(StringBuilder q) {
+		q.append(table).append("(");
+		appendList(q, ownColumnNames, "");
+		q.append(") VALUES (");
+		appendParameters(q, ownColumnNames.length);
+		q.append(")");
+	}
+
+	private void appendAssignments(StringBuilder q, String prefix, String suffix) {
+		boolean first = true;
+		for (int c = -1; ++c < ownColumns.length;) {
+			if(!ownUpdatable[c])
+				continue;
+
+			if(!first)
+				q.append(",");
+			q.append(ownColumnNames[c]).append("=").append(prefix).append(ownColumnNames[c]).append(suffix);
+			first = false;
+		}
+	}
+
+	private static void appendList(StringBuilder q, String[] names, String prefix) {
+		for (int i = -1; ++i < names.length;) {
+			if(i > 0)
+				q.append(",");
+			q.append(prefix).append(names[i]);
+		}
+	}
+
+	private static void appendParameters(StringBuilder q, int count) {
+		for (int i = -1; ++i < count;) {
+			if(i > 0)
+				q.append(",");
+			q.append("?");
+		}
+	}
+
+	int insertChunkSize(int maxParameters) {
+		return Math.max(1, maxParameters / Math.max(1, insertColumnCount));
+	}
+
+	private void appendProjection(StringBuilder q, String[] fieldNames) {
+		if(fieldNames == null) {
+			q.append("*");
+			return;
+		}
+
+		boolean first = true;
+		for (String name : fieldNames) {
+			int i = indexOfField(name);
+			if(i == -1)
+				continue;
+
+			if(!first)
+				q.append(",");
+			q.append(columnNames[i]);
+			first = false;
+		}
+	}
+
+	private String cache(SqlKey key, StringBuilder q) {
+		String sql = q.toString();
+		String old = sqls.putIfAbsent(key.detach(), sql);
+		return old == null ? sql : old;
+	}
+
+	private static final class SqlKey {
+		private final Object[] parts;
+		private final int hash;
+
+		SqlKey(Object... parts) {
+			this.parts = parts;
+			this.hash = Arrays.deepHashCode(parts);
+		}
+
+		SqlKey detach() {
+			Object[] parts = this.parts.clone();
+			for (int i = -1; ++i < parts.length;) {
+				Object p = parts[i];
+				if(p instanceof String[])
+					parts[i] = ((String[]) p).clone();
+				else if(p instanceof boolean[])
+					parts[i] = ((boolean[]) p).clone();
+			}
+			return new SqlKey(parts);
+		}
+
+		public int hashCode() {
+			return hash;
+		}
+
+		public boolean equals(Object o) {
+			return o instanceof SqlKey && hash == ((SqlKey) o).hash && Arrays.deepEquals(parts, ((SqlKey) o).parts);
+		}
+	}
+}
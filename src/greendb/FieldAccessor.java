@@ -0,0 +1,436 @@
+package greendb;
+
+import java.lang.reflect.Field;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import com.jrender.exception.JRenderError;
+
+abstract class FieldAccessor {
+	final Field field;
+
+	private FieldAccessor(Field field) {
+		field.setAccessible(true);
+		this.field = field;
+	}
+
+	static FieldAccessor of(Field field) {
+		return of(field, null);
+	}
+
+	@SuppressWarnings("unchecked")
+	static FieldAccessor of(Field field, EntityMapper<?> mapper) {
+		FieldAccessor accessor = null;
+		if(mapper != null) {
+			String[] names = mapper.getFieldNames();
+			for (int i = -1; ++i < names.length;) {
+				if(names[i].equals(field.getName())) {
+					accessor = new MappedAccessor(field, mapper, i);
+					break;
+				}
+			}
+		}
+
+		if(accessor == null)
+			accessor = typed(field);
+
+		Converter<?> converter = Converters.of(field);
+		return converter == null ? accessor : new ConvertedAccessor(accessor, (Converter<Object>) converter);
+	}
+
+	private static FieldAccessor typed(Field field) {
+		Class<?> type = field.getType();
+		if(type == int.class)
+			return new IntAccessor(field);
+		if(type == long.class)
+			return new LongAccessor(field);
+		if(type == double.class)
+			return new DoubleAccessor(field);
+		if(type == float.class)
+			return new FloatAccessor(field);
+		if(type == short.class)
+			return new ShortAccessor(field);
+		if(type == byte.class)
+			return new ByteAccessor(field);
+		if(type == boolean.class)
+			return new BooleanAccessor(field);
+		if(type == char.class)
+			return new CharAccessor(field);
+		if(type == String.class || type == Integer.class || type == Long.class || type == Double.class || type == Float.class
+				|| type == Short.class || type == Byte.class || type == Boolean.class || type == Character.class)
+			return new BoxedAccessor(field);
+
+		return new ObjectAccessor(field);
+	}
+
+	static FieldAccessor[] of(Field[] fields) {
+		return of(fields, null);
+	}
+
+	static FieldAccessor[] of(Field[] fields, EntityMapper<?> mapper) {
+		FieldAccessor[] accessors = new FieldAccessor[fields.length];
+		for (int i = -1; ++i < fields.length;)
+			accessors[i] = of(fields[i], mapper);
+
+		return accessors;
+	}
+
+	final Object get(Object instance) {
+		try {
+			return doGet(instance);
+		} catch (IllegalAccessException e) {
+			throw new JRenderError(e);
+		}
+	}
+
+	final void set(Object instance, Object value) {
+		if(value == null && field.getType().isPrimitive())
+			return;
+
+		try {
+			doSet(instance, value);
+		} catch (IllegalAccessException e) {
+			throw new JRenderError(e);
+		}
+	}
+
+	final void read(Object instance, ResultSet rs, int column) throws SQLException {
+		try {
+			doRead(instance, rs, column);
+		} catch (IllegalAccessException e) {
+			throw new JRenderError(e);
+		}
+	}
+
+	final void bind(Object instance, PreparedStatement ps, int index) throws SQLException {
+		try {
+			doBind(instance, ps, index);
+		} catch (IllegalAccessException e) {
+			throw new JRenderError(e);
+		}
+	}
+
+	void bindValue(Object value, PreparedStatement ps, int index) throws SQLException {
+		Converters.bind(ps, index, value);
+	}
+
+	abstract Object doGet(Object instance) throws IllegalAccessException;
+
+	abstract void doSet(Object instance, Object value) throws IllegalAccessException;
+
+	void doRead(Object instance, ResultSet rs, int column) throws SQLException, IllegalAccessException {
+		set(instance, rs.getObject(column));
+	}
+
+	void doBind(Object instance, PreparedStatement ps, int index) throws SQLException, IllegalAccessException {
+		ps.setObject(index, doGet(instance));
+	}
+
+	private static final class ObjectAccessor extends FieldAccessor {
+		ObjectAccessor(Field field) { super(field); }
+
+		Object doGet(Object instance) throws IllegalAccessException {
+			return field.get(instance);
+		}
+
+		void doSet(Object instance, Object value) throws IllegalAccessException {
+			field.set(instance, value);
+		}
+	}
+
+	private static final class BoxedAccessor extends FieldAccessor {
+		private final Class<?> type;
+
+		BoxedAccessor(Field field) {
+			super(field);
+			this.type = field.getType();
+		}
+
+		Object doGet(Object instance) throws IllegalAccessException {
+			return field.get(instance);
+		}
+
+		void doSet(Object instance, Object value) throws IllegalAccessException {
+			field.set(instance, value);
+		}
+
+		void doRead(Object instance, ResultSet rs, int column) throws SQLException, IllegalAccessException {
+			field.set(instance, read(type, rs, column));
+		}
+
+		void doBind(Object instance, PreparedStatement ps, int index) throws SQLException, IllegalAccessException {
+			Object value = field.get(instance);
+			if(value instanceof Character)
+				ps.setString(index, value.toString());
+			else
+				ps.setObject(index, value);
+		}
+
+		private static Object read(Class<?> type, ResultSet rs, int column) throws SQLException {
+			if(type == String.class)
+				return rs.getString(column);
+
+			if(type == Character.class) {
+				String s = rs.getString(column);
+				return s == null ? null : s.charAt(0);
+			}
+
+			Object v;
+			if(type == Integer.class)
+				v = rs.getInt(column);
+			else if(type == Long.class)
+				v = rs.getLong(column);
+			else if(type == Double.class)
+				v = rs.getDouble(column);
+			else if(type == Float.class)
+				v = rs.getFloat(column);
+			else if(type == Short.class)
+				v = rs.getShort(column);
+			else if(type == Byte.class)
+				v = rs.getByte(column);
+			else
+				v = rs.getBoolean(column);
+
+			return rs.wasNull() ? null : v;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static final class MappedAccessor extends FieldAccessor {
+		private final EntityMapper<Object> mapper;
+		private final int index;
+
+		MappedAccessor(Field field, EntityMapper<?> mapper, int index) {
+			super(field);
+			this.mapper = (EntityMapper<Object>) mapper;
+			this.index = index;
+		}
+
+		Object doGet(Object instance) {
+			return mapper.get(instance, index);
+		}
+
+		void doSet(Object instance, Object value) {
+			mapper.set(instance, index, value);
+		}
+
+		void doRead(Object instance, ResultSet rs, int column) throws SQLException {
+			mapper.read(instance, index, rs, column);
+		}
+
+		void doBind(Object instance, PreparedStatement ps, int index) throws SQLException {
+			mapper.bind(instance, this.index, ps, index);
+		}
+	}
+
+	private static final class ConvertedAccessor extends FieldAccessor {
+		private final FieldAccessor accessor;
+		private final Converter<Object> converter;
+
+		ConvertedAccessor(FieldAccessor accessor, Converter<Object> converter) {
+			super(accessor.field);
+			this.accessor = accessor;
+			this.converter = converter;
+		}
+
+		Object doGet(Object instance) throws IllegalAccessException {
+			return accessor.doGet(instance);
+		}
+
+		void doSet(Object instance, Object value) throws IllegalAccessException {
+			accessor.doSet(instance, value);
+		}
+
+		void doRead(Object instance, ResultSet rs, int column) throws SQLException {
+			set(instance, converter.read(rs, column));
+		}
+
+		void doBind(Object instance, PreparedStatement ps, int index) throws SQLException, IllegalAccessException {
+			bindValue(accessor.doGet(instance), ps, index);
+		}
+
+		void bindValue(Object value, PreparedStatement ps, int index) throws SQLException {
+			if(value == null)
+				ps.setObject(index, null);
+			else
+				converter.bind(ps, index, value);
+		}
+	}
+
+	private static final class IntAccessor extends FieldAccessor {
+		IntAccessor(Field field) { super(field); }
+
+		Object doGet(Object instance) throws IllegalAccessException {
+			return field.getInt(instance);
+		}
+
+		void doSet(Object instance, Object value) throws IllegalAccessException {
+			field.setInt(instance, ((Number) value).intValue());
+		}
+
+		void doRead(Object instance, ResultSet rs, int column) throws SQLException, IllegalAccessException {
+			int v = rs.getInt(column);
+			if(v != 0 || !rs.wasNull())
+				field.setInt(instance, v);
+		}
+
+		void doBind(Object instance, PreparedStatement ps, int index) throws SQLException, IllegalAccessException {
+			ps.setInt(index, field.getInt(instance));
+		}
+	}
+
+	private static final class LongAccessor extends FieldAccessor {
+		LongAccessor(Field field) { super(field); }
+
+		Object doGet(Object instance) throws IllegalAccessException {
+			return field.getLong(instance);
+		}
+
+		void doSet(Object instance, Object value) throws IllegalAccessException {
+			field.setLong(instance, ((Number) value).longValue());
+		}
+
+		void doRead(Object instance, ResultSet rs, int column) throws SQLException, IllegalAccessException {
+			long v = rs.getLong(column);
+			if(v != 0 || !rs.wasNull())
+				field.setLong(instance, v);
+		}
+
+		void doBind(Object instance, PreparedStatement ps, int index) throws SQLException, IllegalAccessException {
+			ps.setLong(index, field.getLong(instance));
+		}
+	}
+
+	private static final class DoubleAccessor extends FieldAccessor {
+		DoubleAccessor(Field field) { super(field); }
+
+		Object doGet(Object instance) throws IllegalAccessException {
+			return field.getDouble(instance);
+		}
+
+		void doSet(Object instance, Object value) throws IllegalAccessException {
+			field.setDouble(instance, ((Number) value).doubleValue());
+		}
+
+		void doRead(Object instance, ResultSet rs, int column) throws SQLException, IllegalAccessException {
+			double v = rs.getDouble(column);
+			if(v != 0 || !rs.wasNull())
+				field.setDouble(instance, v);
+		}
+
+		void doBind(Object instance, PreparedStatement ps, int index) throws SQLException, IllegalAccessException {
+			ps.setDouble(index, field.getDouble(instance));
+		}
+	}
+
+	private static final class FloatAccessor extends FieldAccessor {
+		FloatAccessor(Field field) { super(field); }
+
+		Object doGet(Object instance) throws IllegalAccessException {
+			return field.getFloat(instance);
+		}
+
+		void doSet(Object instance, Object value) throws IllegalAccessException {
+			field.setFloat(instance, ((Number) value).floatValue());
+		}
+
+		void doRead(Object instance, ResultSet rs, int column) throws SQLException, IllegalAccessException {
+			float v = rs.getFloat(column);
+			if(v != 0 || !rs.wasNull())
+				field.setFloat(instance, v);
+		}
+
+		void doBind(Object instance, PreparedStatement ps, int index) throws SQLException, IllegalAccessException {
+			ps.setFloat(index, field.getFloat(instance));
+		}
+	}
+
+	private static final class ShortAccessor extends FieldAccessor {
+		ShortAccessor(Field field) { super(field); }
+
+		Object doGet(Object instance) throws IllegalAccessException {
+			return field.getShort(instance);
+		}
+
+		void doSet(Object instance, Object value) throws IllegalAccessException {
+			field.setShort(instance, ((Number) value).shortValue());
+		}
+
+		void doRead(Object instance, ResultSet rs, int column) throws SQLException, IllegalAccessException {
+			short v = rs.getShort(column);
+			if(v != 0 || !rs.wasNull())
+				field.setShort(instance, v);
+		}
+
+		void doBind(Object instance, PreparedStatement ps, int index) throws SQLException, IllegalAccessException {
+			ps.setShort(index, field.getShort(instance));
+		}
+	}
+
+	private static final class ByteAccessor extends FieldAccessor {
+		ByteAccessor(Field field) { super(field); }
+
+		Object doGet(Object instance) throws IllegalAccessException {
+			return field.getByte(instance);
+		}
+
+		void doSet(Object instance, Object value) throws IllegalAccessException {
+			field.setByte(instance, ((Number) value).byteValue());
+		}
+
+		void doRead(Object instance, ResultSet rs, int column) throws SQLException, IllegalAccessException {
+			byte v = rs.getByte(column);
+			if(v != 0 || !rs.wasNull())
+				field.setByte(instance, v);
+		}
+
+		void doBind(Object instance, PreparedStatement ps, int index) throws SQLException, IllegalAccessException {
+			ps.setByte(index, field.getByte(instance));
+		}
+	}
+
+	private static final class BooleanAccessor extends FieldAccessor {
+		BooleanAccessor(Field field) { super(field); }
+
+		Object doGet(Object instance) throws IllegalAccessException {
+			return field.getBoolean(instance);
+		}
+
+		void doSet(Object instance, Object value) throws IllegalAccessException {
+			field.setBoolean(instance, value instanceof Number ? ((Number) value).intValue() != 0 : (Boolean) value);
+		}
+
+		void doRead(Object instance, ResultSet rs, int column) throws SQLException, IllegalAccessException {
+			boolean v = rs.getBoolean(column);
+			if(v || !rs.wasNull())
+				field.setBoolean(instance, v);
+		}
+
+		void doBind(Object instance, PreparedStatement ps, int index) throws SQLException, IllegalAccessException {
+			ps.setBoolean(index, field.getBoolean(instance));
+		}
+	}
+
+	private static final class CharAccessor extends FieldAccessor {
+		CharAccessor(Field field) { super(field); }
+
+		Object doGet(Object instance) throws IllegalAccessException {
+			return field.getChar(instance);
+		}
+
+		void doSet(Object instance, Object value) throws IllegalAccessException {
+			field.setChar(instance, value instanceof String ? ((String) value).charAt(0) : (Character) value);
+		}
+
+		void doRead(Object instance, ResultSet rs, int column) throws SQLException, IllegalAccessException {
+			String v = rs.getString(column);
+			if(v != null)
+				field.setChar(instance, v.charAt(0));
+		}
+
+		void doBind(Object instance, PreparedStatement ps, int index) throws SQLException, IllegalAccessException {
+			ps.setString(index, String.valueOf(field.getChar(instance)));
+		}
+	}
+}
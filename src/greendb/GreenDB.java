@@ -1,23 +1,38 @@
 package greendb;
 
 import java.lang.reflect.Field;
-import java.sql.Date;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Timestamp;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import com.jrender.database.DatabaseConnection;
 import com.jrender.database.DatabasePreparedStatement;
-import com.jrender.database.DatabaseStatement;
 import com.jrender.exception.JRenderError;
 import com.jrender.util.GenericReflection;
 import com.jrender.util.GenericReflection.Condition;
+import greendb.GreenDBMetrics.Operation;
+import greendb.GreenDBMetrics.Phase;
 import greendb.annotation.Column;
+import greendb.annotation.ManyToOne;
+import greendb.annotation.OneToMany;
 import greendb.annotation.PK;
-import greendb.annotation.Table;
+import greendb.exception.GreenDBException;
 
 public final class GreenDB {
 	private final static Condition<Field> fieldsColumns = new GenericReflection.Condition<Field>() {
@@ -32,18 +47,37 @@ public final class GreenDB {
 		}
 	};
 		
+	private final static Condition<Field> fieldsRelation = new GenericReflection.Condition<Field>() {
+		public boolean init(Field f) {					
+			return f.isAnnotationPresent(ManyToOne.class) || f.isAnnotationPresent(OneToMany.class);
+		}
+	};
+		
+	private final static int MAX_INSERT_PARAMETERS = 2000;
+	private final static int BATCH_SIZE = 1000;
+	private final static int DELETE_CHUNK_SIZE = 512;
+	private final static int FETCH_CHUNK_SIZE = 512;
+	private final static int MAX_PENDING_KEYS = 1024;
+	private final static Object[] NO_VALUES = {};
+	
+	private final static Map<DatabaseConnection, Map<EntityMeta, Set<EntityKey>>> pending = new WeakHashMap<DatabaseConnection, Map<EntityMeta, Set<EntityKey>>>();
+	
 	public GreenDB() {}
 	
 	static Field[] getColumns(Class<?> model, boolean considerParents) {
-		return getFields(model, "column$"+model.getName(), fieldsColumns, considerParents);
+		return getFields(model, (considerParents ? "column$" : "column$declared$")+model.getName(), fieldsColumns, considerParents);
 	}
 	
 	static Field[] getPKs(Class<?> model) {
-		return getFields(model, "pk$"+model.getName(), fieldsPK, true);
+		return getPKs(model, true);
 	}
 	
 	static Field[] getPKs(Class<?> model, boolean considerParents) {
-		return getFields(model, "pk$"+model.getName(), fieldsPK, considerParents);
+		return getFields(model, (considerParents ? "pk$" : "pk$declared$")+model.getName(), fieldsPK, considerParents);
+	}
+	
+	static Field[] getRelations(Class<?> model) {
+		return getFields(model, "relation$"+model.getName(), fieldsRelation, true);
 	}
 	
 	private static Field[] getFields(Class<?> model, String ref, Condition<Field> condition, boolean considerParents) {
@@ -72,270 +106,843 @@ public final class GreenDB {
 	}
 		
 	public static<E> List<E> findAll(DatabaseConnection connection, Class<E> model, String[] fieldNames, String[] orderByColumnNames) throws SQLException {
-		if(!model.isAnnotationPresent(Table.class))
-			throw new SQLException("Table name not defined in: "+model.getName());
+		return findAll(connection, model, fieldNames, orderByColumnNames, true);
+	}
+	
+	public static<E> List<E> findAll(DatabaseConnection connection, Class<E> model, String[] fieldNames, String[] orderByColumnNames, boolean useQueryCache) throws SQLException {
+		Probe probe = Probe.start(model, Operation.FIND_ALL);
+		EntityMeta meta = EntityMeta.forTable(model);
 		
-		Field[] fields = getColumns(model, true);
+		String sql = meta.selectSql(fieldNames, orderByColumnNames);
+		probe.phase(Phase.BUILD_SQL);
 		
-		StringBuilder q = new StringBuilder("SELECT ").append(fieldToColumnNames(fields, fieldNames));
+		return query(connection, meta, sql, fieldNames, useQueryCache, null, NO_VALUES, probe);
+	}
+	
+	public static<E> List<E> findAllParallel(ConnectionSource source, Class<E> model, int partitions) throws SQLException {
+		return findAllParallel(source, model, null, null, partitions);
+	}
+	
+	public static<E> List<E> findAllParallel(ConnectionSource source, Class<E> model, String[] fieldNames, String columnName, int partitions) throws SQLException {
+		ExecutorService executor = Executors.newFixedThreadPool(partitions);
+		try {
+			return findAllParallel(source, model, fieldNames, columnName, partitions, executor);
+		} finally {
+			executor.shutdown();
+		}
+	}
+	
+	public static<E> List<E> findAllParallel(final ConnectionSource source, Class<E> model, final String[] fieldNames, String columnName, int partitions, ExecutorService executor) throws SQLException {
+		if(partitions < 1)
+			throw new IllegalArgumentException("Invalid partitions: "+partitions);
 		
-		q.append(" FROM ").append(model.getAnnotation(Table.class).value());
+		final EntityMeta meta = EntityMeta.forTable(model);
+		
+		if(columnName == null) {
+			if(meta.pks.length != 1)
+				throw new SQLException("Parallel scan needs a single column primary key or a column name in: "+model.getName());
+			
+			columnName = meta.pkNames[0];
+		}
 		
-		if(orderByColumnNames != null) {
-			q.append(" ORDER BY ").append(orderByColumnNames[0]);
-			for(int i = 0; ++i < orderByColumnNames.length;) {
-				q.append(",").append(orderByColumnNames[i]);
+		long min, max;
+		DatabaseConnection connection = source.getConnection();
+		try {
+			DatabasePreparedStatement st = prepare(connection, meta.boundsSql(columnName));
+			try {
+				ResultSet rs = st.executeQuery();
+				try {
+					rs.next();
+					min = rs.getLong(1);
+					if(rs.wasNull())
+						return null;
+					max = rs.getLong(2);
+				} finally {
+					rs.close();
+				}
+			} finally {
+				release(connection, st);
 			}
+		} finally {
+			source.release(connection);
 		}
 		
-		DatabaseStatement st = connection.createStatement();
-		ResultSet rs = st.executeQuery(q.toString());		
+		final String sql = meta.rangeSql(fieldNames, columnName);
+		final long step = Math.max(1, (max - min) / partitions + 1);
 		
-		E o = buildEntity(rs, model, fields, fieldNames);
-		if(o == null)		
-			return null;
-		else {
-			List<E> list = new ArrayList<E>();
-			list.add(o);
-			while((o = buildEntity(rs, model, fields, fieldNames)) != null)
-				list.add(o);
+		List<Future<List<E>>> ranges = new ArrayList<Future<List<E>>>(partitions);
+		for (long lo = min; lo <= max; lo += step) {
+			final long from = lo;
+			final long to = max - lo < step ? max : lo + step - 1;
 			
-			return list;
+			ranges.add(executor.submit(new Callable<List<E>>() {
+				public List<E> call() throws SQLException {
+					DatabaseConnection connection = source.getConnection();
+					try {
+						DatabasePreparedStatement st = prepare(connection, sql);
+						try {
+							st.setLong(1, from);
+							st.setLong(2, to);
+							return buildList(st.executeQuery(), meta, fieldNames);
+						} finally {
+							release(connection, st);
+						}
+					} finally {
+						source.release(connection);
+					}
+				}
+			}));
+			
+			if(to == max)
+				break;
 		}
+		
+		List<E> list = new ArrayList<E>();
+		try {
+			for (Future<List<E>> range : ranges) {
+				List<E> rows = range.get();
+				if(rows != null)
+					list.addAll(rows);
+			}
+		} catch (InterruptedException e) {
+			for (Future<List<E>> range : ranges)
+				range.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new GreenDBException("Parallel scan interrupted in: "+model.getName());
+		} catch (ExecutionException e) {
+			for (Future<List<E>> range : ranges)
+				range.cancel(true);
+			if(e.getCause() instanceof SQLException)
+				throw (SQLException) e.getCause();
+			throw new JRenderError(e.getCause());
+		}
+		
+		return list.isEmpty() ? null : list;
 	}
 	
-	private static StringBuilder fieldToColumnNames(Field[] fields, String[] fieldNames) {
-		StringBuilder q = new StringBuilder();
+	public static<E> GreenDBPage<E> findPage(DatabaseConnection connection, Class<E> model, int pageSize, Object[] afterKey, String... orderByColumnNames) throws SQLException {
+		if(pageSize < 1)
+			throw new IllegalArgumentException("Invalid page size: "+pageSize);
 		
-		if(fieldNames == null)
-			q.append("*");
-		else {
-			for (int i = -1; ++i < fieldNames.length;) {
-				final String name = fieldNames[i];
-				for (Field f : fields) {
-					if(f.getName().equals(name)) {
-						if(i > 0)
-							q.append(",");
-						Column c = f.getAnnotation(Column.class);
-						q.append(c.value().isEmpty() ? name : c.value());
-						fieldNames[i] = name;
-						break;
+		Probe probe = Probe.start(model, Operation.FIND_PAGE);
+		EntityMeta meta = EntityMeta.forTable(model);
+		
+		List<String> order = new ArrayList<String>(Arrays.asList(orderByColumnNames));
+		for (String pk : meta.pkNames) {
+			if(!order.contains(pk))
+				order.add(pk);
+		}
+		
+		if(order.isEmpty())
+			throw new SQLException("To paginate, need to have primary key or order columns in: "+model.getName());
+		
+		String[] columns = order.toArray(new String[order.size()]);
+		FieldAccessor[] keyAccessors = new FieldAccessor[columns.length];
+		for (int i = -1; ++i < columns.length;) {
+			int c = meta.indexOfColumn(columns[i]);
+			if(c == -1)
+				throw new SQLException("Column "+columns[i]+" not mapped in: "+model.getName());
+			keyAccessors[i] = meta.accessors[c];
+		}
+		
+		if(afterKey != null && afterKey.length != columns.length)
+			throw new SQLException("Expected "+columns.length+" key values to paginate: "+model.getName());
+		
+		Dialect dialect = Dialect.of(connection);
+		String sql = meta.pageSql(columns, afterKey != null, dialect);
+		probe.phase(Phase.BUILD_SQL);
+		
+		List<E> items;
+		DatabasePreparedStatement st = prepare(connection, sql);
+		try {
+			probe.phase(Phase.PREPARE);
+			
+			int p = 0;
+			if(afterKey != null) {
+				if(columns.length == 1 || dialect.rowValues) {
+					for (int i = -1; ++i < afterKey.length;)
+						keyAccessors[i].bindValue(afterKey[i], st, ++p);
+				} else {
+					for (int i = -1; ++i < afterKey.length;) {
+						for (int j = -1; ++j <= i;)
+							keyAccessors[j].bindValue(afterKey[j], st, ++p);
 					}
 				}
 			}
+			st.setInt(++p, pageSize + 1);
+			
+			ResultSet rs = st.executeQuery();
+			probe.phase(Phase.EXECUTE);
+			
+			items = buildList(rs, meta, null);
+		} finally {
+			release(connection, st);
+		}
+		probe.phase(Phase.MAP);
+		probe.rows(items == null ? 0 : items.size());
+		if(items == null)
+			return new GreenDBPage<E>(new ArrayList<E>(0), null);
+		
+		Object[] nextKey = null;
+		if(items.size() > pageSize) {
+			items.remove(pageSize);
+			
+			E last = items.get(pageSize - 1);
+			nextKey = new Object[keyAccessors.length];
+			for (int i = -1; ++i < keyAccessors.length;)
+				nextKey[i] = keyAccessors[i].get(last);
 		}
 		
-		return q;
+		return new GreenDBPage<E>(items, nextKey);
+	}
+	
+	public static<E> GreenDBCursor<E> iterate(DatabaseConnection connection, Class<E> model, int fetchSize) throws SQLException {
+		return iterate(connection, model, null, null, fetchSize);
+	}
+	
+	public static<E> GreenDBCursor<E> iterate(DatabaseConnection connection, Class<E> model, String[] fieldNames, String[] orderByColumnNames, int fetchSize) throws SQLException {
+		EntityMeta meta = EntityMeta.forTable(model);
+		
+		return openCursor(connection.prepareStatement(meta.selectSql(fieldNames, orderByColumnNames)), meta, fieldNames, fetchSize, null);
+	}
+	
+	public static<E> GreenDBCursor<E> iterateByColumns(DatabaseConnection connection, Class<E> model, int fetchSize, String[] selectColumnNames, String[] whereColumnNames, String[] groupColumnNames, Object... values) throws SQLException {
+		EntityMeta meta = EntityMeta.forTable(model);
+		
+		DatabasePreparedStatement st = connection.prepareStatement(meta.selectByColumnsSql(selectColumnNames, whereColumnNames, groupColumnNames, nullMask(values)));
+		return openCursor(st, meta, selectColumnNames, fetchSize, meta.whereAccessors(whereColumnNames), values);
+	}
+	
+	private static<E> GreenDBCursor<E> openCursor(PreparedStatement st, EntityMeta meta, String[] fieldNames, int fetchSize, FieldAccessor[] accessors, Object... values) throws SQLException {
+		GreenDBCursor<E> cursor = null;
+		try {
+			bindNonNull(st, accessors, values);
+			st.setFetchDirection(ResultSet.FETCH_FORWARD);
+			if(fetchSize != 0)
+				st.setFetchSize(fetchSize);
+			
+			ResultSet rs = st.executeQuery();
+			cursor = new GreenDBCursor<E>(st, rs, RowMapper.<E>of(meta, rs, fieldNames));
+			return cursor;
+		} finally {
+			if(cursor == null)
+				st.close();
+		}
+	}
+	
+	public static ColumnBatch fetchColumns(DatabaseConnection connection, Class<?> model, String... fieldNames) throws SQLException {
+		return fetchColumns(connection, model, 0, fieldNames, null);
+	}
+	
+	public static ColumnBatch fetchColumns(DatabaseConnection connection, Class<?> model, int fetchSize, String[] fieldNames, String[] whereColumnNames, Object... values) throws SQLException {
+		if(fieldNames == null || fieldNames.length == 0)
+			throw new IllegalArgumentException("No fields to fetch from: "+model.getName());
+		
+		Probe probe = Probe.start(model, Operation.FETCH_COLUMNS);
+		EntityMeta meta = EntityMeta.forTable(model);
+		ColumnBatch batch = ColumnBatch.of(meta, fieldNames);
+		
+		String sql = whereColumnNames == null ? meta.selectSql(fieldNames, null) : meta.selectByColumnsSql(fieldNames, whereColumnNames, null, nullMask(values));
+		probe.phase(Phase.BUILD_SQL);
+		
+		DatabasePreparedStatement st = connection.prepareStatement(sql);
+		try {
+			probe.phase(Phase.PREPARE);
+			
+			bindNonNull(st, whereColumnNames == null ? null : meta.whereAccessors(whereColumnNames), values);
+			st.setFetchDirection(ResultSet.FETCH_FORWARD);
+			if(fetchSize != 0)
+				st.setFetchSize(fetchSize);
+			
+			ResultSet rs = st.executeQuery();
+			probe.phase(Phase.EXECUTE);
+			try {
+				batch.read(rs);
+			} finally {
+				rs.close();
+			}
+			probe.phase(Phase.MAP);
+			probe.rows(batch.size());
+		} finally {
+			st.close();
+		}
+		
+		return batch;
 	}
 	
 	public static<E> E buildObject(ResultSet rs, Class<E> model) {
-		return buildEntity(rs, model, getColumns(model, true), null);
+		return buildObject(rs, model, null);
 	}
 	
 	public static<E> E buildObject(ResultSet rs, Class<E> model, String[] fieldNames) {
-		return buildEntity(rs, model, getColumns(model, true), fieldNames);
+		return RowMapper.<E>cached(EntityMeta.of(model), rs, fieldNames).next(rs);
 	}
-		
-	private static<E> E buildEntity(ResultSet rs, Class<E> model, Field[] fields, String[] fieldNames) {
+	
+	private static<E> List<E> buildList(ResultSet rs, EntityMeta meta, String[] fieldNames) throws SQLException {
 		try {
-			if(rs.next()) {
-				E instance = model.newInstance();
-				if(fieldNames == null) {
-					for (Field f : fields) {
-						Column c = f.getAnnotation(Column.class);
-						GenericReflection.NoThrow.setValue(f, rs.getObject(c.value().isEmpty() ? f.getName() : c.value()), instance);
-					}
-				} else {
-					for (String s : fieldNames) {
-						for (Field f : fields) {
-							if(f.getName().equals(s)) {
-								GenericReflection.NoThrow.setValue(f, rs.getObject(s), instance);
-								break;
-							}
-						}
-					}
-				}
+			RowMapper<E> mapper = RowMapper.of(meta, rs, fieldNames);
+			
+			E o = mapper.next(rs);
+			if(o == null)		
+				return null;
+			else {
+				List<E> list = new ArrayList<E>();
+				list.add(o);
+				while((o = mapper.next(rs)) != null)
+					list.add(o);
 				
-				return instance;
-			}		
-		} catch (Exception e) {
-			throw new JRenderError(e);
+				return list;
+			}
+		} finally {
+			rs.close();
 		}
-		
-		return null;
 	}
 	
 	public static<E> E findByPK(DatabaseConnection connection, Class<E> model) throws SQLException {
 		return findByPK(connection, model, null);
 	}
 	public static<E> E findByPK(DatabaseConnection connection, Class<E> model, String[] selectColumnNames, Object... values) throws SQLException {
-		if(!model.isAnnotationPresent(Table.class))
-			throw new SQLException("Table name not defined in: "+model.getName());
+		Probe probe = Probe.start(model, Operation.FIND_BY_PK);
+		EntityMeta meta = EntityMeta.forTable(model);
+		
+		final boolean cached = meta.cache != null && selectColumnNames == null && connection.getAutoCommit();
+		long version = 0;
+		if(cached) {
+			E o = meta.cache.get(EntityKey.of(model, values));
+			if(o != null)
+				return o;
+			
+			version = meta.cache.version();
+		}
 		
-		Field[] fields = getColumns(model, true);
+		String sql = meta.selectByPKSql(selectColumnNames);
+		probe.phase(Phase.BUILD_SQL);
 		
-		StringBuilder q = new StringBuilder("SELECT ").append(fieldToColumnNames(fields, selectColumnNames)).append(" FROM ").append(model.getAnnotation(Table.class).value()).append(" WHERE ");
+		E o;
+		DatabasePreparedStatement st = prepare(connection, sql);
+		try {
+			probe.phase(Phase.PREPARE);
+			
+			for (int i = -1; ++i < values.length;)
+				bind(st, i+1, meta.pkAccessors, i, values[i]);
+					
+			ResultSet rs = st.executeQuery();
+			probe.phase(Phase.EXECUTE);
+			
+			try {
+				o = RowMapper.<E>of(meta, rs, selectColumnNames).next(rs);
+			} finally {
+				rs.close();
+			}
+			probe.phase(Phase.MAP);
+			probe.rows(o == null ? 0 : 1);
+		} finally {
+			release(connection, st);
+		}
 		
-		Field[] fieldsPK = getPKs(model);
+		if(cached && o != null && !isPending(meta)) {
+			EntityKey key = EntityKey.of(meta, o);
+			if(key != null)
+				meta.cache.put(key, o, version);
+		}
 		
-		for (int i = -1; ++i < fieldsPK.length;) {
-			Field f = fieldsPK[i];
-			if(i > 0)
-				q.append(" and ");
+		return o;
+	}
+	
+	public static<E> List<E> findByColumns(DatabaseConnection connection, Class<E> model, String[] selectColumnNames, String[] whereColumnNames, String[] groupColumnNames, Object... values) throws SQLException {
+		return findByColumns(connection, model, true, selectColumnNames, whereColumnNames, groupColumnNames, values);
+	}
+	
+	public static<E> List<E> findByColumns(DatabaseConnection connection, Class<E> model, boolean useQueryCache, String[] selectColumnNames, String[] whereColumnNames, String[] groupColumnNames, Object... values) throws SQLException {
+		Probe probe = Probe.start(model, Operation.FIND_BY_COLUMNS);
+		EntityMeta meta = EntityMeta.forTable(model);
+		
+		String sql = meta.selectByColumnsSql(selectColumnNames, whereColumnNames, groupColumnNames, nullMask(values));
+		probe.phase(Phase.BUILD_SQL);
+		
+		return query(connection, meta, sql, selectColumnNames, useQueryCache, meta.whereAccessors(whereColumnNames), values, probe);
+	}
+	
+	private static<E> List<E> query(DatabaseConnection connection, EntityMeta meta, String sql, String[] fieldNames, boolean useQueryCache, FieldAccessor[] accessors, Object[] values, Probe probe) throws SQLException {
+		QueryCache queryCache = QueryCache.getInstance();
+		
+		QueryCache.Key key = null;
+		long version = 0;
+		if(useQueryCache && queryCache.isEnabled() && connection.getAutoCommit()) {
+			key = new QueryCache.Key(meta.model, sql, values);
+			
+			List<E> list = queryCache.get(meta, key);
+			if(list != null)
+				return eager(connection, meta, list.isEmpty() ? null : list, fieldNames);
+			
+			version = queryCache.version(meta.table);
+		}
+		
+		List<E> list;
+		DatabasePreparedStatement st = prepare(connection, sql);
+		try {
+			probe.phase(Phase.PREPARE);
+			
+			bindNonNull(st, accessors, values);
 			
-			Column c = f.getAnnotation(Column.class);
+			ResultSet rs = st.executeQuery();
+			probe.phase(Phase.EXECUTE);
 			
-			q.append(c.value().isEmpty() ? f.getName() : c.value()).append(" = ?");
+			list = buildList(rs, meta, fieldNames);
+			probe.phase(Phase.MAP);
+			probe.rows(list == null ? 0 : list.size());
+		} finally {
+			release(connection, st);
 		}
 		
+		if(key != null && !isPending(meta))
+			queryCache.put(meta, key, version, list);
 		
-		DatabasePreparedStatement st = connection.prepareStatement(q.toString());
+		return eager(connection, meta, list, fieldNames);
+	}
+	
+	private static<E> List<E> eager(DatabaseConnection connection, EntityMeta meta, List<E> list, String[] fieldNames) throws SQLException {
+		if(list == null || fieldNames != null || meta.eager.length == 0)
+			return list;
 		
-		for (int i = -1; ++i < values.length;)
-			st.setObject(i+1, values[i]);
-				
-		return buildEntity(st.executeQuery(), model, fields, null);
+		return fetch(connection, list, meta.eager);
 	}
 	
-	public static<E> List<E> findByColumns(DatabaseConnection connection, Class<E> model, String[] selectColumnNames, String[] whereColumnNames, String[] groupColumnNames, Object... values) throws SQLException {
-		if(!model.isAnnotationPresent(Table.class))
-			throw new SQLException("Table name not defined in: "+model.getName());
+	public static<E> List<E> fetch(DatabaseConnection connection, List<E> list, String... relations) throws SQLException {
+		if(list == null || list.isEmpty())
+			return list;
+		
+		EntityMeta meta = EntityMeta.of(list.get(0).getClass());
+		for (String name : relations) {
+			Relation r = meta.relation(name);
+			if(r == null)
+				throw new SQLException("Relation "+name+" not mapped in: "+meta.model.getName());
+			
+			if(r.toMany)
+				fetchMany(connection, meta, r, list);
+			else
+				fetchOne(connection, meta, r, list);
+		}
 		
-		Field[] fields = getColumns(model, true);
+		return list;
+	}
+	
+	private static void fetchOne(DatabaseConnection connection, EntityMeta meta, Relation r, List<?> list) throws SQLException {
+		EntityMeta target = EntityMeta.forTable(r.target);
+		if(target.pks.length != 1)
+			throw new SQLException("To fetch "+r.name+", need to have a single primary key in: "+target.model.getName());
 		
-		StringBuilder q = new StringBuilder("SELECT ").append(fieldToColumnNames(fields, selectColumnNames)).append(" FROM ").append(model.getAnnotation(Table.class).value()).append(" WHERE ");
+		int fk = meta.indexOfField(r.foreignKey);
+		if(fk == -1)
+			throw new SQLException("Field "+r.foreignKey+" not mapped in: "+meta.model.getName());
 		
-		Field[] fieldsPK = getColumns(model, true);
+		FieldAccessor fkAccessor = meta.accessors[fk];
+		Map<EntityKey, Object> found = new HashMap<EntityKey, Object>();
+		List<Object> missing = new ArrayList<Object>();
 		
-		int i = -1;
-		for (Field f: fieldsPK) {			
-			Column c = f.getAnnotation(Column.class);
-			String name = c.value().isEmpty() ? f.getName() : c.value();
-			for(String columnName: whereColumnNames) {
-				if(columnName.equals(name)) {
-					if(++i > 0)
-						q.append(" and ");
-					
-					q.append(c.value().isEmpty() ? f.getName() : c.value())					
-						.append(values[i] == null ? " is null" : " = ?");
-				}
+		boolean cached = target.cache != null && connection.getAutoCommit();
+		long version = cached ? target.cache.version() : 0;
+		
+		for (Object o : list) {
+			Object v = fkAccessor.get(o);
+			if(v == null)
+				continue;
+			
+			EntityKey k = EntityKey.of(target.model, v);
+			if(found.containsKey(k))
+				continue;
+			
+			Object hit = cached ? target.cache.get(k) : null;
+			found.put(k, hit);
+			if(hit == null)
+				missing.add(v);
+		}
+		
+		cached &= !missing.isEmpty() && !isPending(target);
+		for (Object o : selectIn(connection, target, target.pkNames[0], missing)) {
+			EntityKey k = EntityKey.of(target, o);
+			found.put(k, o);
+			if(cached)
+				target.cache.put(k, o, version);
+		}
+		
+		for (Object o : list) {
+			Object v = fkAccessor.get(o);
+			r.accessor.set(o, v == null ? null : found.get(EntityKey.of(target.model, v)));
+		}
+	}
+	
+	private static void fetchMany(DatabaseConnection connection, EntityMeta meta, Relation r, List<?> list) throws SQLException {
+		if(meta.pks.length != 1)
+			throw new SQLException("To fetch "+r.name+", need to have a single primary key in: "+meta.model.getName());
+		
+		EntityMeta target = EntityMeta.forTable(r.target);
+		int fk = target.indexOfField(r.foreignKey);
+		if(fk == -1)
+			throw new SQLException("Field "+r.foreignKey+" not mapped in: "+target.model.getName());
+		
+		FieldAccessor pk = meta.pkAccessors[0];
+		FieldAccessor fkAccessor = target.accessors[fk];
+		Map<EntityKey, List<Object>> children = new HashMap<EntityKey, List<Object>>();
+		List<Object> keys = new ArrayList<Object>();
+		
+		for (Object o : list) {
+			Object v = pk.get(o);
+			if(v == null)
+				continue;
+			
+			EntityKey k = EntityKey.of(meta.model, v);
+			if(!children.containsKey(k)) {
+				children.put(k, new ArrayList<Object>());
+				keys.add(v);
+			}
+		}
+		
+		for (Object o : selectIn(connection, target, target.columnNames[fk], keys)) {
+			Object v = fkAccessor.get(o);
+			List<Object> l = v == null ? null : children.get(EntityKey.of(meta.model, v));
+			if(l != null)
+				l.add(o);
+		}
+		
+		for (Object o : list) {
+			Object v = pk.get(o);
+			List<Object> l = v == null ? null : children.get(EntityKey.of(meta.model, v));
+			r.accessor.set(o, l == null ? new ArrayList<Object>() : new ArrayList<Object>(l));
+		}
+	}
+	
+	private static List<Object> selectIn(DatabaseConnection connection, EntityMeta meta, String columnName, List<Object> values) throws SQLException {
+		List<Object> result = new ArrayList<Object>();
+		
+		for (int from = 0, s = values.size(); from < s; from += FETCH_CHUNK_SIZE) {
+			int n = Math.min(FETCH_CHUNK_SIZE, s - from);
+			
+			int size = 1;
+			while(size < n)
+				size <<= 1;
+			
+			Probe probe = Probe.start(meta.model, Operation.FETCH);
+			String sql = meta.selectInSql(columnName, size);
+			probe.phase(Phase.BUILD_SQL);
+			
+			List<Object> chunk;
+			DatabasePreparedStatement st = prepare(connection, sql);
+			try {
+				probe.phase(Phase.PREPARE);
+				
+				for (int i = -1; ++i < size;)
+					Converters.bind(st, i + 1, values.get(from + Math.min(i, n - 1)));
+				
+				ResultSet rs = st.executeQuery();
+				probe.phase(Phase.EXECUTE);
+				
+				chunk = buildList(rs, meta, null);
+				probe.phase(Phase.MAP);
+				probe.rows(chunk == null ? 0 : chunk.size());
+			} finally {
+				release(connection, st);
 			}
+			
+			if(chunk != null)
+				result.addAll(chunk);
 		}
 		
-		if(groupColumnNames != null) {
-			q.append(" GROUP BY ");
-			for(i = -1; ++i < groupColumnNames.length;) {
-				if(i > 0)
-					q.append(',');
-				q.append(groupColumnNames[i]);
+		return result;
+	}
+	
+	public static EntityCache getEntityCache(Class<?> model) {
+		return EntityMeta.of(model).cache;
+	}
+	
+	public static QueryCache getQueryCache() {
+		return QueryCache.getInstance();
+	}
+	
+	public static<T> void registerConverter(Class<T> type, Converter<T> converter) {
+		EntityMeta meta = EntityMeta.mapping(type);
+		if(meta != null)
+			throw new IllegalStateException("Converter for "+type.getName()+" must be registered before "+meta.model.getName()+" is used");
+		
+		Converters.register(type, converter);
+	}
+	
+	public static void setIdConnectionSource(ConnectionSource source) {
+		IdAllocator.setConnectionSource(source);
+	}
+	
+	public static void setMetrics(GreenDBMetrics metrics) {
+		Probe.setMetrics(metrics);
+	}
+	
+	public static GreenDBMetrics getMetrics() {
+		return Probe.getMetrics();
+	}
+	
+	public static void commit(DatabaseConnection connection) throws SQLException {
+		try {
+			connection.commit();
+		} finally {
+			invalidatePending(connection);
+		}
+	}
+	
+	public static void rollback(DatabaseConnection connection) throws SQLException {
+		try {
+			connection.rollback();
+		} finally {
+			invalidatePending(connection);
+		}
+	}
+	
+	private static void invalidate(DatabaseConnection connection, EntityMeta meta, Object model) throws SQLException {
+		Set<EntityKey> keys = new HashSet<EntityKey>();
+		if(meta.cache != null) {
+			if(model instanceof List) {
+				for (Object o : (List<?>) model) {
+					EntityKey key = EntityKey.of(meta, o);
+					if(key != null)
+						keys.add(key);
+				}
+			} else {
+				EntityKey key = EntityKey.of(meta, model);
+				if(key != null)
+					keys.add(key);
 			}
-		}		
+		}
+		
+		invalidate(meta, keys);
 		
-		DatabasePreparedStatement st = connection.prepareStatement(q.toString());
+		if(connection.getAutoCommit())
+			return;
 		
-		for (i = -1; ++i < values.length;) {
-			Object v = values[i];
-			if(v != null) {
-				st.setObject(i+1, v);
+		synchronized (pending) {
+			Map<EntityMeta, Set<EntityKey>> tables = pending.get(connection);
+			if(tables == null)
+				pending.put(connection, tables = new HashMap<EntityMeta, Set<EntityKey>>());
+			
+			if(!tables.containsKey(meta))
+				tables.put(meta, keys);
+			else {
+				Set<EntityKey> s = tables.get(meta);
+				if(s != null) {
+					s.addAll(keys);
+					if(s.size() > MAX_PENDING_KEYS)
+						tables.put(meta, null);
+				}
 			}
 		}
+	}
+	
+	private static void invalidate(EntityMeta meta, Set<EntityKey> keys) {
+		QueryCache.getInstance().bump(meta.table);
+		
+		if(meta.cache == null)
+			return;
 		
-		ResultSet rs = st.executeQuery();
-		E o = buildEntity(rs, model, fields, selectColumnNames);
-		if(o == null)		
-			return null;
+		if(keys == null)
+			meta.cache.clear();
 		else {
-			List<E> list = new ArrayList<E>();
-			list.add(o);
-			while((o = buildEntity(rs, model, fields, selectColumnNames)) != null)
-				list.add(o);
-			
-			return list;
+			for (EntityKey key : keys)
+				meta.cache.remove(key);
 		}
 	}
 	
+	private static boolean isPending(EntityMeta meta) throws SQLException {
+		synchronized (pending) {
+			for (Iterator<Map.Entry<DatabaseConnection, Map<EntityMeta, Set<EntityKey>>>> it = pending.entrySet().iterator(); it.hasNext();) {
+				Map.Entry<DatabaseConnection, Map<EntityMeta, Set<EntityKey>>> e = it.next();
+				DatabaseConnection c = e.getKey();
+				if(c.isClosed() || c.getAutoCommit())
+					it.remove();
+				else if(e.getValue().containsKey(meta))
+					return true;
+			}
+		}
+		return false;
+	}
+	
+	private static void invalidatePending(DatabaseConnection connection) {
+		Map<EntityMeta, Set<EntityKey>> tables;
+		synchronized (pending) {
+			tables = pending.remove(connection);
+		}
+		
+		if(tables == null)
+			return;
+		
+		for (Map.Entry<EntityMeta, Set<EntityKey>> e : tables.entrySet())
+			invalidate(e.getKey(), e.getValue());
+	}
+	
+	public static StatementCache getStatementCache(DatabaseConnection connection) {
+		return StatementCache.of(connection);
+	}
+	
+	public static void closeStatements(DatabaseConnection connection) {
+		StatementCache.remove(connection);
+	}
+	
+	private static DatabasePreparedStatement prepare(DatabaseConnection connection, String sql) throws SQLException {
+		return StatementCache.of(connection).prepare(connection, sql);
+	}
+	
+	private static DatabasePreparedStatement prepare(DatabaseConnection connection, String sql, int autoGeneratedKeys) throws SQLException {
+		return StatementCache.of(connection).prepare(connection, sql, autoGeneratedKeys);
+	}
+	
+	private static void release(DatabaseConnection connection, DatabasePreparedStatement st) {
+		StatementCache.of(connection).release(st);
+	}
+	
+	private static boolean[] nullMask(Object[] values) {
+		boolean[] nulls = new boolean[values.length];
+		for (int i = -1; ++i < values.length;)
+			nulls[i] = values[i] == null;
+		
+		return nulls;
+	}
+	
+	private static void bindNonNull(PreparedStatement st, FieldAccessor[] accessors, Object[] values) throws SQLException {
+		int p = 0;
+		for (int i = -1; ++i < values.length;) {
+			if(values[i] != null)
+				bind(st, ++p, accessors, i, values[i]);
+		}
+	}
+	
+	private static void bind(PreparedStatement st, int index, FieldAccessor[] accessors, int i, Object value) throws SQLException {
+		if(accessors != null && i < accessors.length)
+			accessors[i].bindValue(value, st, index);
+		else
+			Converters.bind(st, index, value);
+	}
+	
 	public static boolean update(DatabaseConnection connection, Object model) throws SQLException {
+		if(model instanceof List)
+			return isUpdatedAll(update(connection, (List<?>) model));
+		
 		return update(connection, model, model.getClass());
 	}
 	
 	public static boolean update(DatabaseConnection connection, Object model, /* Temporario */Class<?> ref, String... fieldNames) throws SQLException {
-		Class<?> modelClass = ref;
-		if(!modelClass.isAnnotationPresent(Table.class))
-			throw new SQLException("Table name not defined in: "+modelClass.getName());
+		EntityMeta meta = forUpdate(ref);
+		
+		if(fieldNames.length == 0 && meta.snapshots != null) {
+			Object[] snapshot = meta.snapshots.get(model);
+			if(snapshot != null) {
+				fieldNames = meta.changedColumns(snapshot, model);
+				if(fieldNames.length == 0)
+					return true;
+			}
+		}
 		
-		Field[] fieldsPK = getPKs(modelClass, false);
-		if(fieldsPK.length == 0)
-			throw new SQLException("To upgrade, need to have primary key in: "+modelClass.getName());
+		Probe probe = Probe.start(ref, Operation.UPDATE);
+		String sql = meta.updateSql(fieldNames);
+		probe.phase(Phase.BUILD_SQL);
 		
-		StringBuilder sql = new StringBuilder("UPDATE ").append(modelClass.getAnnotation(Table.class).value()).append(" SET ");
+		int count;
+		DatabasePreparedStatement dps = prepare(connection, sql);
+		try {
+			probe.phase(Phase.PREPARE);
+			
+			setUpdateObject(meta, dps, model, fieldNames, Arrays.asList(fieldNames));
+			
+			count = dps.executeUpdate();
+			probe.phase(Phase.EXECUTE);
+			probe.rows(count);
+		} finally {
+			release(connection, dps);
+		}
 		
-		Field[] fields = getColumns(modelClass, false);
+		boolean ok = count > 0;
 		
-		List<String> listFieldNames = Arrays.asList(fieldNames);
+		invalidate(connection, meta, model);
 		
-		int i = -1;
-		for (Field f : fields) {
-			if(f.isAnnotationPresent(PK.class))
-				continue;
-			
-			Column c = f.getAnnotation(Column.class);
+		if(ok && meta.snapshots != null)
+			meta.snapshots.take(model);
+		
+		return ok;
+	}
+	
+	public static int[] update(DatabaseConnection connection, List<?> list) throws SQLException {
+		return update(connection, list, new String[0]);
+	}
+	
+	public static int[] update(DatabaseConnection connection, List<?> list, String... fieldNames) throws SQLException {
+		final int s = list.size();
+		int[] counts = new int[s];
+		if(s == 0)
+			return counts;
+		
+		Class<?> model = list.get(0).getClass();
+		EntityMeta meta = forUpdate(model);
+		
+		Probe probe = Probe.start(model, Operation.UPDATE);
+		String sql = meta.updateSql(fieldNames);
+		probe.phase(Phase.BUILD_SQL);
+		
+		DatabasePreparedStatement dps = prepare(connection, sql);
+		try {
+			probe.phase(Phase.PREPARE);
 			
-			if(!c.updatable())
-				continue;
+			List<String> listFieldNames = Arrays.asList(fieldNames);
 			
-			String name = c.value().isEmpty() ? f.getName() : c.value();
+			dps.clearBatch();
 			
-			if(fieldNames.length > 0 && listFieldNames.indexOf(name) == -1) {
-				continue;
+			int i = 0, pending = 0;
+			for (Object o : list) {
+				setUpdateObject(meta, dps, o, fieldNames, listFieldNames);
+				dps.addBatch();
+				
+				if(++pending == BATCH_SIZE) {
+					System.arraycopy(dps.executeBatch(), 0, counts, i, pending);
+					probe.batch(pending);
+					i += pending;
+					pending = 0;
+				}
 			}
 			
-			if(++i > 0)
-				sql.append(",");
-			
-			sql.append(name).append("=").append("?");
+			if(pending > 0) {
+				System.arraycopy(dps.executeBatch(), 0, counts, i, pending);
+				probe.batch(pending);
+			}
+			probe.phase(Phase.EXECUTE);
+			probe.rows(s);
+		} finally {
+			release(connection, dps);
 		}
 		
-		sql.append(" WHERE ");
+		invalidate(connection, meta, list);
 		
-		i = -1;
-		for (Field f : fieldsPK) {
-			if(++i > 0)
-				sql.append(" AND ");
-			Column c = f.getAnnotation(Column.class);
-			sql.append(c.value().isEmpty() ? f.getName() : c.value()).append("=").append("?");
+		if(meta.snapshots != null) {
+			for (Object o : list)
+				meta.snapshots.take(o);
 		}
 		
-		DatabasePreparedStatement dps = connection.prepareStatement(sql.toString());
+		return counts;
+	}
+	
+	private static EntityMeta forUpdate(Class<?> modelClass) throws SQLException {
+		EntityMeta meta = EntityMeta.forTable(modelClass);
 		
-		i = 0;
-		for (Field f : fields) {
-			if(f.isAnnotationPresent(PK.class))
-				continue;
-			
-			Column c = f.getAnnotation(Column.class);			
-			if(!c.updatable())
-				continue;
-			
-			String name = c.value().isEmpty() ? f.getName() : c.value();
-			
-			if(fieldNames.length > 0 && listFieldNames.indexOf(name) == -1) {
+		if(meta.ownPks.length == 0)
+			throw new SQLException("To upgrade, need to have primary key in: "+modelClass.getName());
+		
+		return meta;
+	}
+	
+	private static void setUpdateObject(EntityMeta meta, DatabasePreparedStatement dps, Object model, String[] fieldNames, List<String> listFieldNames) throws SQLException {
+		int i = 0;
+		for (int c = -1; ++c < meta.ownColumns.length;) {
+			if(!meta.isUpdated(c, fieldNames, listFieldNames))
 				continue;
-			}
 			
-			Object value = GenericReflection.NoThrow.getValue(f, model);
-			if(value != null && f.getType().equals(Date.class)) {
-				dps.setTimestamp(++i, new Timestamp(((Date) value).getTime()));
-			} else if(value != null && f.getType().equals(Timestamp.class)) {
-				dps.setTimestamp(++i, (Timestamp) value);
-			} else {
-				dps.setObject(++i, value);
-			}
+			meta.ownAccessors[c].bind(model, dps, ++i);
 		}
 		
-		for (Field f : fieldsPK)
-			dps.setObject(++i, GenericReflection.NoThrow.getValue(f, model));
-		
-		return dps.executeUpdate() > 0;
+		for (FieldAccessor a : meta.ownPkAccessors)
+			a.bind(model, dps, ++i);
 	}
 	
 	public static boolean delete(DatabaseConnection connection, Object model) throws SQLException {
@@ -356,58 +963,142 @@ public final class GreenDB {
 		} else
 			modelClass = model.getClass();
 		
-		if(!modelClass.isAnnotationPresent(Table.class))
-			throw new SQLException("Table name not defined in: "+modelClass.getName());
+		Probe probe = Probe.start(modelClass, Operation.DELETE);
+		EntityMeta meta = EntityMeta.forTable(modelClass);
 		
-		Field[] fieldsCondition = getPKs(modelClass);
-		if(fieldsCondition.length == 0)
-			fieldsCondition = getColumns(modelClass, true);
+		boolean ok;
+		if(isList && ignoreFields == null && meta.pks.length > 0)
+			ok = meta.pks.length == 1 ? deleteByKeys(connection, meta, list, probe) : deleteBatch(connection, meta, list, probe);
+		else
+			ok = deleteByConditions(connection, meta, isList ? list : Collections.singletonList(model), ignoreFields);
+		probe.phase(Phase.EXECUTE);
+		probe.rows(isList ? list.size() : 1);
 		
-		StringBuilder sql = new StringBuilder("DELETE FROM ").append(modelClass.getAnnotation(Table.class).value()).append(" WHERE ");
+		invalidate(connection, meta, model);
 		
-		int i = -1;		
-		final int s = isList ? list.size() : 1;
+		if(meta.snapshots != null) {
+			if(isList) {
+				for (Object o : list)
+					meta.snapshots.remove(o);
+			} else
+				meta.snapshots.remove(model);
+		}
 		
+		return ok;
+	}
+	
+	private static boolean deleteByConditions(DatabaseConnection connection, EntityMeta meta, List<?> list, String[] ignoreFields) throws SQLException {
 		List<Object> values = new ArrayList<Object>();
+		List<FieldAccessor> accessors = new ArrayList<FieldAccessor>();
+		
+		for (Object o : list) {
+			for (int c = -1; ++c < meta.conditions.length;) {
+				if(EntityMeta.isIgnored(meta.conditionNames[c], ignoreFields))
+					continue;
+				
+				values.add(meta.conditionAccessors[c].get(o));
+				accessors.add(meta.conditionAccessors[c]);
+			}
+		}
+		
+		boolean[] nulls = new boolean[values.size()];
+		for (int i = -1; ++i < nulls.length;)
+			nulls[i] = values.get(i) == null;
 		
-		for (; ++i < s;) {
-			if(i > 0)
-				sql.append(" OR ");
+		String sql = meta.deleteSql(ignoreFields, list.size(), nulls);
+		boolean cached = list.size() == 1;
 		
+		DatabasePreparedStatement dps = cached ? prepare(connection, sql) : connection.prepareStatement(sql);
+		try {
+			bindNonNull(dps, accessors.toArray(new FieldAccessor[accessors.size()]), values.toArray());
 			
-			int i2 = -1;
-
-			loopFieldsCondition:
-			for (Field f : fieldsCondition) {
-				Column c = f.getAnnotation(Column.class);
-				String fieldName = c.value().isEmpty() ? f.getName() : c.value();
-				
-				if(ignoreFields != null) {
-					for (String _fieldName : ignoreFields) {
-						if(fieldName.equals(_fieldName)) {
-							continue loopFieldsCondition;
-						}
-					}
+			return dps.executeUpdate() > 0;
+		} finally {
+			if(cached)
+				release(connection, dps);
+			else
+				dps.close();
+		}
+	}
+	
+	private static boolean deleteByKeys(DatabaseConnection connection, EntityMeta meta, List<?> list, Probe probe) throws SQLException {
+		FieldAccessor pk = meta.conditionAccessors[0];
+		Iterator<?> it = list.iterator();
+		boolean ok = false;
+		
+		for (int remaining = list.size(); remaining > 0;) {
+			int n = Math.min(DELETE_CHUNK_SIZE, remaining);
+			remaining -= n;
+			
+			int size = 1;
+			while(size < n)
+				size <<= 1;
+			
+			DatabasePreparedStatement dps = prepare(connection, meta.deleteInSql(size));
+			try {
+				Object last = null;
+				for (int i = 0; i < size; i++) {
+					if(i < n)
+						last = it.next();
+					pk.bind(last, dps, i + 1);
 				}
 				
-				if(++i2 > 0)
-					sql.append(" AND ");
-				
-				Object value = GenericReflection.NoThrow.getValue(f, isList ? list.get(i) : model);
-				values.add(value);
-				
-				
-				sql.append(fieldName).append(value == null ? " is " : "=").append("?");
+				ok |= dps.executeUpdate() > 0;
+				probe.batch(n);
+			} finally {
+				release(connection, dps);
 			}
 		}
 		
-		DatabasePreparedStatement dps = connection.prepareStatement(sql.toString());
-		
-		i = 0;		
-		for (Object v : values)
-			dps.setObject(++i, v);
-		
-		return dps.executeUpdate() > 0;
+		return ok;
+	}
+	
+	private static boolean deleteBatch(DatabaseConnection connection, EntityMeta meta, List<?> list, Probe probe) throws SQLException {
+		DatabasePreparedStatement dps = prepare(connection, meta.deleteSql(null, 1, new boolean[meta.pks.length]));
+		try {
+			boolean ok = false;
+			
+			dps.clearBatch();
+			
+			int pending = 0;
+			for (Object o : list) {
+				int i = 0;
+				for (FieldAccessor a : meta.conditionAccessors)
+					a.bind(o, dps, ++i);
+				dps.addBatch();
+				
+				if(++pending == BATCH_SIZE) {
+					ok |= isUpdated(dps.executeBatch());
+					probe.batch(pending);
+					pending = 0;
+				}
+			}
+			
+			if(pending > 0) {
+				ok |= isUpdated(dps.executeBatch());
+				probe.batch(pending);
+			}
+			
+			return ok;
+		} finally {
+			release(connection, dps);
+		}
+	}
+	
+	static boolean isUpdatedAll(int[] counts) {
+		for (int count : counts) {
+			if(count == 0)
+				return false;
+		}
+		return true;
+	}
+	
+	private static boolean isUpdated(int[] counts) {
+		for (int count : counts) {
+			if(count > 0 || count == Statement.SUCCESS_NO_INFO)
+				return true;
+		}
+		return false;
 	}
 	
 	public static boolean insert(DatabaseConnection connection, Object model) throws SQLException {
@@ -421,104 +1112,250 @@ public final class GreenDB {
 		@SuppressWarnings("unchecked")
 		final List<Object> list = isList ? (List<Object>) model : null;
 		
-		if(ref == null) {
-			if(isList) {
-				if(list.size() == 0)
-					return false;
-				
-				modelClass = list.get(0).getClass();
-			}else {
-				modelClass = model.getClass();
-			}
-		}
+		if(isList && list.size() == 0)
+			return false;
 		
-		if(!modelClass.isAnnotationPresent(Table.class))
-			throw new SQLException("Table name not defined in: "+modelClass.getName());
+		if(ref == null)
+			modelClass = isList ? list.get(0).getClass() : model.getClass();
 		
-		Field[] fields = getColumns(modelClass, false);
+		EntityMeta meta = EntityMeta.forTable(modelClass);
 		
-		StringBuilder q = new StringBuilder("INSERT INTO ").append(modelClass.getAnnotation(Table.class).value()).append("(");
+		if(isList)
+			return insertChunks(connection, meta, list, meta.insertChunkSize(MAX_INSERT_PARAMETERS));
+		else
+			return insertRows(connection, meta, Collections.singletonList(model));
+	}
+	
+	public static boolean insert(DatabaseConnection connection, List<?> list, int chunkSize) throws SQLException {
+		if(chunkSize < 1)
+			throw new IllegalArgumentException("Invalid chunk size: "+chunkSize);
 		
-		Field fieldWithAutoIncrement = null;
+		if(list.size() == 0)
+			return false;
 		
-		boolean first = true;
+		return insertChunks(connection, EntityMeta.forTable(list.get(0).getClass()), list, chunkSize);
+	}
+	
+	private static boolean insertChunks(DatabaseConnection connection, EntityMeta meta, List<?> list, int chunkSize) throws SQLException {
+		boolean ok = true;
+		for (int i = 0, s = list.size(), n; i < s; i += n) {
+			n = s - i >= chunkSize ? chunkSize : Integer.highestOneBit(s - i);
+			ok &= insertRows(connection, meta, list.subList(i, i + n));
+		}
 		
-		for (int i = -1; ++i < fields.length;) {
-			Field f = fields[i];
-			PK pk = f.getAnnotation(PK.class);
-			if(pk != null && pk.autoIncrement()) {
-				fieldWithAutoIncrement = f;
-				continue;
-			}
+		return ok;
+	}
+	
+	private static boolean insertRows(DatabaseConnection connection, EntityMeta meta, List<?> rows) throws SQLException {
+		boolean hasAutoIncrementKey = meta.autoIncrement != null;
+		
+		if(meta.idAllocator != null)
+			meta.assignIds(connection, rows);
+		
+		Probe probe = Probe.start(meta.model, Operation.INSERT);
+		String sql = meta.insertSql(rows.size());
+		probe.phase(Phase.BUILD_SQL);
+		
+		boolean ok;
+		DatabasePreparedStatement dps = prepare(connection, sql, hasAutoIncrementKey ? DatabasePreparedStatement.RETURN_GENERATED_KEYS : DatabasePreparedStatement.NO_GENERATED_KEYS);
+		try {
+			probe.phase(Phase.PREPARE);
 			
-			if(!first)
-				q.append(",");
+			int i = 0;
+			for (Object _model : rows)
+				i = setDBObject(meta, dps, _model, i);
 			
-			Column c = f.getAnnotation(Column.class);
-			q.append(c.value().isEmpty() ? f.getName() : c.value());
+			int count = dps.executeUpdate();
+			probe.phase(Phase.EXECUTE);
+			probe.rows(count);
+			probe.batch(rows.size());
 			
-			first = false;
+			ok = count > 0;
+			
+			if(ok && hasAutoIncrementKey) {
+				ResultSet rs = dps.getGeneratedKeys();
+				try {
+					for (Object _model : rows) {
+						rs.next();
+						meta.autoIncrementAccessor.set(_model, IdAllocator.convert(rs.getLong(1), meta.autoIncrement.getType()));
+					}
+				} finally {
+					rs.close();
+				}
+				probe.phase(Phase.GENERATED_KEYS);
+			}
+		} finally {
+			release(connection, dps);
 		}
-		q.append(") VALUES");
 		
-		boolean hasAutoIncrementKey = fieldWithAutoIncrement != null;
+		invalidate(connection, meta, rows);
 		
-		int length = fields.length;
-		if(hasAutoIncrementKey)
-			--length;
+		if(ok && meta.snapshots != null) {
+			for (Object _model : rows)
+				meta.snapshots.take(_model);
+		}
 		
-		if(isList){
-			for (int i = -1, s = list.size(); ++i < s;) {
-				if(i > 0)
-					q.append(",");
-				createParamInsertString(q, length);
+		return ok;
+	}
+	
+	public static boolean upsert(DatabaseConnection connection, Object model) throws SQLException {
+		@SuppressWarnings("unchecked")
+		final List<Object> list = model instanceof List ? (List<Object>) model : Collections.singletonList(model);
+		
+		if(list.size() == 0)
+			return false;
+		
+		EntityMeta meta = EntityMeta.forTable(list.get(0).getClass());
+		
+		if(meta.ownPks.length == 0)
+			throw new SQLException("To upsert, need to have primary key in: "+meta.model.getName());
+		
+		if(meta.idAllocator != null)
+			meta.assignIds(connection, list);
+		
+		List<Object> rows = list, fresh = null;
+		if(meta.autoIncrement != null) {
+			rows = new ArrayList<Object>(list.size());
+			fresh = new ArrayList<Object>();
+			for (Object o : list) {
+				if(isUnassigned(meta.autoIncrementAccessor.get(o)))
+					fresh.add(o);
+				else
+					rows.add(o);
 			}
-		} else
-			createParamInsertString(q, length);
+		}
+		
+		boolean ok = false;
+		if(!rows.isEmpty()) {
+			Dialect dialect = Dialect.of(connection);
+			ok = dialect.hasUpsert() ? upsertRows(connection, meta, rows, dialect) : mergeRows(connection, meta, rows);
+		}
 		
-		DatabasePreparedStatement dps = connection.prepareStatement(q.toString(), hasAutoIncrementKey ? DatabasePreparedStatement.RETURN_GENERATED_KEYS : DatabasePreparedStatement.NO_GENERATED_KEYS);
+		if(fresh != null && !fresh.isEmpty())
+			ok |= insertChunks(connection, meta, fresh, meta.insertChunkSize(MAX_INSERT_PARAMETERS));
 		
+		return ok;
+	}
+	
+	static boolean isUnassigned(Object key) {
+		return key == null || (key instanceof Number && ((Number) key).longValue() == 0);
+	}
+	
+	private static boolean upsertRows(DatabaseConnection connection, EntityMeta meta, List<?> rows, Dialect dialect) throws SQLException {
+		Probe probe = Probe.start(meta.model, Operation.UPSERT);
+		String sql = meta.upsertSql(dialect);
+		probe.phase(Phase.BUILD_SQL);
+		
+		boolean ok = false;
+		DatabasePreparedStatement dps = prepare(connection, sql);
 		try {
-			if(isList) {
+			probe.phase(Phase.PREPARE);
+			
+			if(rows.size() == 1) {
 				int i = 0;
-				for (Object _model : list) {					
-					i = setDBObject(fields, fieldWithAutoIncrement, dps, _model, i);
-				}
+				for (FieldAccessor a : meta.ownAccessors)
+					a.bind(rows.get(0), dps, ++i);
+				
+				ok = dps.executeUpdate() > 0;
 			} else {
-				setDBObject(fields, fieldWithAutoIncrement, dps, model, 0);
+				dps.clearBatch();
+				
+				int pending = 0;
+				for (Object o : rows) {
+					int i = 0;
+					for (FieldAccessor a : meta.ownAccessors)
+						a.bind(o, dps, ++i);
+					dps.addBatch();
+					
+					if(++pending == BATCH_SIZE) {
+						ok |= isUpdated(dps.executeBatch());
+						probe.batch(pending);
+						pending = 0;
+					}
+				}
+				
+				if(pending > 0) {
+					ok |= isUpdated(dps.executeBatch());
+					probe.batch(pending);
+				}
 			}
-		} catch (Exception e) {
-			throw new JRenderError(e);
-		}		
+			probe.phase(Phase.EXECUTE);
+			probe.rows(rows.size());
+		} finally {
+			release(connection, dps);
+		}
 		
-		boolean ok = dps.executeUpdate() > 0;
+		invalidate(connection, meta, rows);
 		
-		if(ok && hasAutoIncrementKey) {
-			ResultSet rs = dps.getGeneratedKeys();
-			
-			if(isList) {
-				for (Object _model : list) {
-					rs.next();
-					GenericReflection.NoThrow.setValue(fieldWithAutoIncrement, rs.getInt(1), _model);
+		if(meta.snapshots != null) {
+			for (Object o : rows)
+				meta.snapshots.take(o);
+		}
+		
+		return ok;
+	}
+	
+	private static boolean mergeRows(DatabaseConnection connection, EntityMeta meta, List<?> rows) throws SQLException {
+		Probe probe = Probe.start(meta.model, Operation.UPSERT);
+		List<Object> missing = new ArrayList<Object>();
+		boolean ok = false;
+		
+		if(meta.hasUpdatable()) {
+			String[] fieldNames = new String[0];
+			List<String> listFieldNames = Collections.emptyList();
+			DatabasePreparedStatement dps = prepare(connection, meta.updateSql(fieldNames));
+			try {
+				for (Object o : rows) {
+					setUpdateObject(meta, dps, o, fieldNames, listFieldNames);
+					if(dps.executeUpdate() > 0)
+						ok = true;
+					else
+						missing.add(o);
 				}
-			}else {
-				rs.next();
-				GenericReflection.NoThrow.setValue(fieldWithAutoIncrement, rs.getInt(1), model);
-			}	    
+			} finally {
+				release(connection, dps);
+			}
+		} else {
+			DatabasePreparedStatement dps = prepare(connection, meta.selectByPKSql(null));
+			try {
+				for (Object o : rows) {
+					int i = 0;
+					for (FieldAccessor a : meta.pkAccessors)
+						a.bind(o, dps, ++i);
+					
+					ResultSet rs = dps.executeQuery();
+					try {
+						if(!rs.next())
+							missing.add(o);
+					} finally {
+						rs.close();
+					}
+				}
+			} finally {
+				release(connection, dps);
+			}
+		}
+		probe.phase(Phase.EXECUTE);
+		probe.rows(rows.size() - missing.size());
+		
+		invalidate(connection, meta, rows);
+		
+		if(meta.snapshots != null) {
+			for (Object o : rows)
+				meta.snapshots.take(o);
 		}
 		
+		if(!missing.isEmpty())
+			ok |= insertChunks(connection, meta, missing, meta.insertChunkSize(MAX_INSERT_PARAMETERS));
+		
 		return ok;
 	}
 	
-	private static int setDBObject(Field[] fields, Field fieldWithAutoIncrement, DatabasePreparedStatement dps, Object model, int i) throws IllegalArgumentException, SQLException, IllegalAccessException {
-		for (Field f : fields) {
-			if(f.equals(fieldWithAutoIncrement))
-				continue;
-			
-			if(f.getType().equals(Date.class))
-				dps.setTimestamp(++i, new Timestamp(((Date) f.get(model)).getTime()));
-			else
-				dps.setObject(++i, f.get(model));
+	private static int setDBObject(EntityMeta meta, DatabasePreparedStatement dps, Object model, int i) throws SQLException {
+		Field[] fields = meta.ownColumns;
+		for (int c = -1; ++c < fields.length;) {
+			if(fields[c] != meta.autoIncrement)
+				meta.ownAccessors[c].bind(model, dps, ++i);
 		}
 		return i;
 	}
@@ -631,21 +1468,6 @@ public final class GreenDB {
 		return ok;
 	}*/
 	
-	private static void createParamInsertString(StringBuilder q, final int length) {
-		try {
-			q.append("(");
-			for (int i = -1; ++i < length;) {
-				if(i > 0)
-					q.append(",");
-				
-				q.append("?");
-			}
-			q.append(")");
-		} catch (Exception e) {
-			throw new JRenderError(e);
-		}
-	}
-	
 	public static<E> GreenDBList<E> synchronizedList(List<E> list) {
 		return GreenDBList.Synchronized(list);
 	}
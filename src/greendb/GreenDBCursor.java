@@ -0,0 +1,80 @@
+package greendb;
+
+import java.io.Closeable;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import greendb.exception.GreenDBException;
+
+public final class GreenDBCursor<E> implements Iterator<E>, Iterable<E>, Closeable {
+
+	private final Statement statement;
+	private final ResultSet rs;
+	private final RowMapper<E> mapper;
+
+	private E next;
+	private boolean closed;
+
+	GreenDBCursor(Statement statement, ResultSet rs, RowMapper<E> mapper) {
+		this.statement = statement;
+		this.rs = rs;
+		this.mapper = mapper;
+	}
+
+	public boolean hasNext() {
+		if(next == null && !closed) {
+			try {
+				if(rs.next())
+					next = mapper.map(rs);
+				else
+					close();
+			} catch (SQLException e) {
+				close();
+				throw new GreenDBException(e);
+			}
+		}
+
+		return next != null;
+	}
+
+	public E next() {
+		if(!hasNext())
+			throw new NoSuchElementException();
+
+		E o = next;
+		next = null;
+		return o;
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	public Iterator<E> iterator() {
+		return this;
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	public void close() {
+		if(closed)
+			return;
+
+		closed = true;
+		next = null;
+		try {
+			try {
+				rs.close();
+			} finally {
+				statement.close();
+			}
+		} catch (SQLException e) {
+			throw new GreenDBException(e);
+		}
+	}
+}
@@ -4,18 +4,38 @@ import com.jrender.database.DatabaseConnection;
 import com.jrender.kernel.JRenderContext;
 import greendb.exception.GreenDBException;
 
+import java.io.Closeable;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Map;
+import java.util.Set;
 
-public final class GreenDBList<E> implements List<E> {	
+public final class GreenDBList<E> implements List<E>, Closeable {	
 	
 	private DatabaseConnection connection;
 	private final List<E> list;
 	
+	private final boolean writeBehind;
+	private final int maxPending;
+	private final long maxDelayMillis;
+	private Set<Object> pendingInserts;
+	private Set<Object> pendingUpserts;
+	private Set<Object> pendingDeletes;
+	private long firstPendingAt;
+	
+	private final EntityMeta meta;
+	private Map<EntityKey, E> index;
+	private boolean stale;
+	private boolean duplicates;
+	
 	private DatabaseConnection getConnection() {
 		try {
 			if(connection == null || connection.isClosed())
@@ -27,22 +47,141 @@ public final class GreenDBList<E> implements List<E> {
 		return this.connection;
 	}
 	
+	private void insert(Object o) {
+		if(writeBehind) {
+			pendingInserts.add(o);
+			pending();
+			return;
+		}
+		
+		try {
+			GreenDB.insert(getConnection(), o);
+		} catch (SQLException e) {
+			throw new GreenDBException(e);
+		}
+	}
+	
 	private void insertList(Collection<?> list) {
 		if(!(list instanceof GreenDBList)) {
+			if(writeBehind) {
+				pendingInserts.addAll(list);
+				pending();
+				return;
+			}
+			
 			try {
-				GreenDB.insert(getConnection(), list);
+				GreenDB.insert(getConnection(), list instanceof List ? list : new ArrayList<Object>(list));
 			} catch (SQLException e) {
 				throw new GreenDBException(e);
 			}
 		}
 	}
 	
+	private void upsert(Object o) {
+		if(writeBehind) {
+			if(!pendingInserts.contains(o))
+				pendingUpserts.add(o);
+			pending();
+			return;
+		}
+		
+		try {
+			GreenDB.upsert(getConnection(), o);
+		} catch (SQLException e) {
+			throw new GreenDBException(e);
+		}
+	}
+	
+	private void delete(Object o) {
+		if(writeBehind) {
+			pendingUpserts.remove(o);
+			if(!pendingInserts.remove(o))
+				pendingDeletes.add(o);
+			pending();
+			return;
+		}
+		
+		try {
+			GreenDB.delete(getConnection(), o);
+		} catch (SQLException e) {
+			throw new GreenDBException(e);
+		}
+	}
+	
+	private void deleteList(Collection<?> list) {
+		if(writeBehind) {
+			for (Object o : list) {
+				pendingUpserts.remove(o);
+				if(!pendingInserts.remove(o))
+					pendingDeletes.add(o);
+			}
+			pending();
+			return;
+		}
+		
+		try {
+			GreenDB.delete(getConnection(), list instanceof List ? list : new ArrayList<Object>(list));
+		} catch (SQLException e) {
+			throw new GreenDBException(e);
+		}
+	}
+	
+	private void pending() {
+		int size = getPendingCount();
+		if(size == 0)
+			return;
+		
+		if(firstPendingAt == 0)
+			firstPendingAt = System.currentTimeMillis();
+		
+		if((maxPending > 0 && size >= maxPending) || (maxDelayMillis > 0 && System.currentTimeMillis() - firstPendingAt >= maxDelayMillis))
+			flush();
+	}
+	
+	public void flush() {
+		if(!writeBehind)
+			return;
+		
+		try {
+			if(!pendingDeletes.isEmpty()) {
+				GreenDB.delete(getConnection(), new ArrayList<Object>(pendingDeletes));
+				pendingDeletes.clear();
+			}
+			
+			if(!pendingUpserts.isEmpty()) {
+				GreenDB.upsert(getConnection(), new ArrayList<Object>(pendingUpserts));
+				pendingUpserts.clear();
+			}
+			
+			if(!pendingInserts.isEmpty()) {
+				GreenDB.insert(getConnection(), new ArrayList<Object>(pendingInserts));
+				pendingInserts.clear();
+			}
+		} catch (SQLException e) {
+			throw new GreenDBException(e);
+		}
+		
+		firstPendingAt = 0;
+	}
+	
+	public void close() {
+		flush();
+	}
+	
+	public boolean isWriteBehind() {
+		return writeBehind;
+	}
+	
+	public int getPendingCount() {
+		return writeBehind ? pendingInserts.size() + pendingUpserts.size() + pendingDeletes.size() : 0;
+	}
+	
 	public GreenDBList() {
-		this.list = new ArrayList<E>();
+		this(new ArrayList<E>(), true);
 	}
 	
 	public GreenDBList(int size) {
-		this.list = new ArrayList<E>(size);
+		this(new ArrayList<E>(size), true);
 	}
 	
 	public GreenDBList(List<E> list) {
@@ -50,80 +189,249 @@ public final class GreenDBList<E> implements List<E> {
 	}
 	
 	GreenDBList(List<E> list, boolean isAlreadySynchronized) {
+		this(list, isAlreadySynchronized, false, 0, 0, null);
+	}
+	
+	private GreenDBList(List<E> list, boolean isAlreadySynchronized, boolean writeBehind, int maxPending, long maxDelayMillis, Class<E> indexed) {
 		this.list = list;
+		this.meta = indexed == null ? null : EntityMeta.of(indexed);
+		this.writeBehind = writeBehind;
+		this.maxPending = maxPending;
+		this.maxDelayMillis = maxDelayMillis;
+		if(writeBehind) {
+			this.pendingInserts = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+			this.pendingUpserts = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+			this.pendingDeletes = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+		}
+		
+		if(meta != null && meta.pkAccessors.length == 0)
+			throw new GreenDBException("To index, need to have primary key in: "+indexed.getName());
+		
 		if(!isAlreadySynchronized)
 			insertList(list);
+		
+		if(meta != null)
+			reindex();
 	}
 	
 	public static<E> GreenDBList<E> Synchronized(List<E> list) {
 		return new GreenDBList<E>(list, true);
 	}
 	
-	public boolean add(E arg0) {
-		try {
-			GreenDB.insert(getConnection(), arg0);
-		} catch (SQLException e) {
-			throw new GreenDBException(e);
+	public static<E> GreenDBList<E> writeBehind(int maxPending, long maxDelayMillis) {
+		return new GreenDBList<E>(new ArrayList<E>(), true, true, maxPending, maxDelayMillis, null);
+	}
+	
+	public static<E> GreenDBList<E> writeBehind(List<E> list, boolean isAlreadySynchronized, int maxPending, long maxDelayMillis) {
+		return new GreenDBList<E>(list, isAlreadySynchronized, true, maxPending, maxDelayMillis, null);
+	}
+	
+	public static<E> GreenDBList<E> indexed(Class<E> model, List<E> list, boolean isAlreadySynchronized) {
+		return new GreenDBList<E>(list, isAlreadySynchronized, false, 0, 0, model);
+	}
+	
+	public boolean isIndexed() {
+		return meta != null;
+	}
+	
+	public E getByKey(Object... values) {
+		if(meta == null)
+			throw new UnsupportedOperationException("List is not indexed");
+		
+		return lookup(EntityKey.of(meta.model, values));
+	}
+	
+	public E removeByKey(Object... values) {
+		E o = getByKey(values);
+		if(o == null)
+			return null;
+		
+		delete(o);
+		removeIdentity(o);
+		unindex(o);
+		return o;
+	}
+	
+	private EntityKey keyOf(Object o) {
+		return meta.model.isInstance(o) ? EntityKey.of(meta, o) : null;
+	}
+	
+	private E lookup(EntityKey key) {
+		if(key == null)
+			return null;
+		
+		if(stale)
+			reindex();
+		
+		return index.get(key);
+	}
+	
+	private void reindex() {
+		index = new HashMap<EntityKey, E>(Math.max(16, list.size() * 4 / 3 + 1));
+		stale = false;
+		duplicates = false;
+		for (E o : list) {
+			EntityKey key = keyOf(o);
+			if(key != null && index.put(key, o) != null)
+				duplicates = true;
+		}
+	}
+	
+	private void index(E o) {
+		if(meta == null)
+			return;
+		
+		EntityKey key = keyOf(o);
+		if(key == null)
+			stale = true;
+		else {
+			E old = index.put(key, o);
+			if(old != null && old != o)
+				duplicates = true;
+		}
+	}
+	
+	private void indexAll(Collection<? extends E> c) {
+		if(meta != null) {
+			for (E o : c)
+				index(o);
+		}
+	}
+	
+	private void unindex(Object o) {
+		if(meta == null)
+			return;
+		
+		EntityKey key = keyOf(o);
+		if(key == null || index.get(key) != o)
+			return;
+		
+		if(duplicates)
+			stale = true;
+		else
+			index.remove(key);
+	}
+	
+	private void removeIdentity(Object o) {
+		for (int i = list.size(); --i >= 0;) {
+			if(list.get(i) == o) {
+				list.remove(i);
+				return;
+			}
 		}
+	}
+	
+	private boolean retainByKey(Collection<?> c, boolean retain) {
+		Set<EntityKey> keys = new HashSet<EntityKey>();
+		Set<Object> unkeyed = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+		for (Object o : c) {
+			EntityKey key = keyOf(o);
+			if(key == null)
+				unkeyed.add(o);
+			else
+				keys.add(key);
+		}
+		
+		ArrayList<E> kept = new ArrayList<E>(list.size());
+		ArrayList<E> dropped = new ArrayList<E>();
+		for (E o : list) {
+			EntityKey key = keyOf(o);
+			boolean found = key == null ? unkeyed.contains(o) : keys.contains(key);
+			if(found == retain)
+				kept.add(o);
+			else
+				dropped.add(o);
+		}
+		
+		if(dropped.isEmpty())
+			return false;
+		
+		deleteList(dropped);
+		list.clear();
+		list.addAll(kept);
+		reindex();
+		return true;
+	}
+	
+	public boolean add(E arg0) {
+		insert(arg0);
+		index(arg0);
 		return list.add(arg0);
 	}
 
 	public void add(int arg0, E arg1) {
-		try {
-			GreenDB.insert(getConnection(), arg0);
-		} catch (SQLException e) {
-			throw new GreenDBException(e);
-		}
+		insert(arg1);
+		index(arg1);
 		list.add(arg0, arg1);
 	}
 
 	public boolean addAll(Collection<? extends E> arg0) {
 		insertList(arg0);
+		indexAll(arg0);
 		return list.addAll(arg0);
 	}
 
 	public boolean addAll(int arg0, Collection<? extends E> arg1) {
 		insertList(arg1);
+		indexAll(arg1);
 		return list.addAll(arg0, arg1);
 	}
 
 	public void clear() {
-		try {
-			GreenDB.delete(getConnection(), list);
-		} catch (SQLException e) {
-			throw new GreenDBException(e);
-		}
+		deleteList(list);
 		list.clear();
+		if(meta != null)
+			reindex();
 	}
 
 	public boolean remove(Object arg0) {
-		try {
-			GreenDB.delete(getConnection(), arg0);
-		} catch (SQLException e) {
-			throw new GreenDBException(e);
+		if(meta != null) {
+			E o = lookup(keyOf(arg0));
+			if(o != null) {
+				delete(o);
+				removeIdentity(o);
+				unindex(o);
+				return true;
+			}
 		}
-		return list.remove(arg0);
+		
+		int i = list.indexOf(arg0);
+		if(i == -1)
+			return false;
+		
+		remove(i);
+		return true;
 	}
 
 	public E remove(int arg0) {
-		try {
-			GreenDB.delete(getConnection(), list.get(arg0));
-		} catch (SQLException e) {
-			throw new GreenDBException(e);
-		}
-		return list.remove(arg0);
+		delete(list.get(arg0));
+		E o = list.remove(arg0);
+		unindex(o);
+		return o;
 	}
 
 	public boolean removeAll(Collection<?> arg0) {
-		try {
-			GreenDB.delete(getConnection(), arg0);
-		} catch (SQLException e) {
-			throw new GreenDBException(e);
+		if(meta != null)
+			return retainByKey(arg0, false);
+		
+		ArrayList<E> subList = new ArrayList<E>();
+		for (E o : list) {
+			if(arg0.contains(o))
+				subList.add(o);
 		}
+		
+		if(subList.isEmpty())
+			return false;
+		
+		deleteList(subList);
+		
 		return list.removeAll(arg0);
 	}
 
 	public boolean retainAll(Collection<?> arg0) {
+		if(meta != null)
+			return retainByKey(arg0, true);
+		
 		ArrayList<E> subList = new ArrayList<E>();
 		for (E o : list) {
 			if(!arg0.contains(o))
@@ -133,33 +441,46 @@ public final class GreenDBList<E> implements List<E> {
 		if(subList.isEmpty())
 			return false;
 		
-		try {
-			GreenDB.delete(getConnection(), subList);
-		} catch (SQLException e) {
-			throw new GreenDBException(e);
-		}
+		deleteList(subList);
 		
 		return list.retainAll(arg0);
 	}
 
 	public E set(int arg0, E arg1) {
-		try {
-			E o = list.get(arg0);
-			GreenDB.delete(getConnection(), o);
-			GreenDB.insert(getConnection(), arg1);
-		} catch (SQLException e) {
-			throw new GreenDBException(e);
+		E old = list.get(arg0);
+		if(old != arg1) {
+			if(!isSameKey(old, arg1))
+				delete(old);
+			else if(writeBehind) {
+				pendingInserts.remove(old);
+				pendingUpserts.remove(old);
+			}
 		}
+		upsert(arg1);
 		
+		unindex(old);
+		index(arg1);
 		return list.set(arg0, arg1);
 	}
+	
+	private static boolean isSameKey(Object a, Object b) {
+		if(a == null || b == null || a.getClass() != b.getClass())
+			return false;
+		
+		EntityMeta meta = EntityMeta.of(a.getClass());
+		EntityKey key = EntityKey.of(meta, a);
+		return key != null && key.equals(EntityKey.of(meta, b));
+	}
 
 	public int size() {
 		return list.size();
 	}
 
 	public List<E> subList(int arg0, int arg1) {
-		return new GreenDBList<E>(list.subList(arg0, arg1));
+		if(meta != null)
+			return Collections.unmodifiableList(list.subList(arg0, arg1));
+		
+		return new GreenDBList<E>(list.subList(arg0, arg1), true);
 	}
 
 	public Object[] toArray() {
@@ -171,6 +492,11 @@ public final class GreenDBList<E> implements List<E> {
 	}
 
 	public boolean contains(Object arg0) {
+		if(meta != null) {
+			EntityKey key = keyOf(arg0);
+			if(key != null)
+				return lookup(key) != null;
+		}
 		return list.contains(arg0);
 	}
 
@@ -183,6 +509,20 @@ public final class GreenDBList<E> implements List<E> {
 	}
 
 	public int indexOf(Object arg0) {
+		if(meta != null) {
+			EntityKey key = keyOf(arg0);
+			if(key != null) {
+				E o = lookup(key);
+				if(o == null)
+					return -1;
+				
+				for (int i = -1, s = list.size(); ++i < s;) {
+					if(list.get(i) == o)
+						return i;
+				}
+				return -1;
+			}
+		}
 		return list.indexOf(arg0);
 	}
 
@@ -191,7 +531,7 @@ public final class GreenDBList<E> implements List<E> {
 	}
 
 	public Iterator<E> iterator() {
-		return list.iterator();
+		return meta != null ? Collections.unmodifiableList(list).iterator() : list.iterator();
 	}
 
 	public int lastIndexOf(Object arg0) {
@@ -199,11 +539,11 @@ public final class GreenDBList<E> implements List<E> {
 	}
 
 	public ListIterator<E> listIterator() {
-		return list.listIterator();
+		return meta != null ? Collections.unmodifiableList(list).listIterator() : list.listIterator();
 	}
 
 	public ListIterator<E> listIterator(int arg0) {
-		return list.listIterator(arg0);
+		return meta != null ? Collections.unmodifiableList(list).listIterator(arg0) : list.listIterator(arg0);
 	}
 
 }
@@ -0,0 +1,17 @@
+package greendb;
+
+public interface GreenDBMetrics {
+
+	public enum Operation {
+		FIND_ALL, FIND_BY_PK, FIND_BY_COLUMNS, FIND_PAGE, FETCH_COLUMNS, FETCH, INSERT, UPDATE, UPSERT, DELETE
+	}
+
+	public enum Phase {
+		BUILD_SQL, PREPARE, EXECUTE, MAP, GENERATED_KEYS
+	}
+
+	public void phase(Class<?> model, Operation operation, Phase phase, long nanos);
+	public void rows(Class<?> model, Operation operation, int rows);
+	public void batch(Class<?> model, Operation operation, int size);
+	public void statementCache(boolean hit);
+}
@@ -0,0 +1,25 @@
+package greendb;
+
+import java.util.List;
+
+public final class GreenDBPage<E> {
+	private final List<E> items;
+	private final Object[] nextKey;
+
+	GreenDBPage(List<E> items, Object[] nextKey) {
+		this.items = items;
+		this.nextKey = nextKey;
+	}
+
+	public List<E> getItems() {
+		return items;
+	}
+
+	public Object[] getNextKey() {
+		return nextKey == null ? null : nextKey.clone();
+	}
+
+	public boolean hasNext() {
+		return nextKey != null;
+	}
+}
@@ -0,0 +1,154 @@
+package greendb;
+
+import java.io.Closeable;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.jrender.database.DatabaseConnection;
+
+public final class GreenDBSession implements Closeable {
+
+	private final DatabaseConnection connection;
+	private final Map<EntityKey, Object> entities = new HashMap<EntityKey, Object>();
+
+	public GreenDBSession(DatabaseConnection connection) {
+		this.connection = connection;
+	}
+
+	public DatabaseConnection getConnection() {
+		return connection;
+	}
+
+	@SuppressWarnings("unchecked")
+	public <E> E findByPK(Class<E> model, Object... values) throws SQLException {
+		EntityKey key = EntityKey.of(model, values);
+		Object o = entities.get(key);
+		if(o != null)
+			return (E) o;
+
+		E e = GreenDB.findByPK(connection, model, null, values);
+		if(e != null)
+			return dedupe(EntityMeta.of(model), e);
+
+		return null;
+	}
+
+	public <E> List<E> findAll(Class<E> model) throws SQLException {
+		return findAll(model, null, null);
+	}
+
+	public <E> List<E> findAll(Class<E> model, String[] orderByColumnNames) throws SQLException {
+		return findAll(model, null, orderByColumnNames);
+	}
+
+	public <E> List<E> findAll(Class<E> model, String[] fieldNames, String[] orderByColumnNames) throws SQLException {
+		List<E> list = GreenDB.findAll(connection, model, fieldNames, orderByColumnNames);
+		if(fieldNames == null)
+			dedupe(model, list);
+
+		return list;
+	}
+
+	public <E> List<E> findByColumns(Class<E> model, String[] selectColumnNames, String[] whereColumnNames, String[] groupColumnNames, Object... values) throws SQLException {
+		List<E> list = GreenDB.findByColumns(connection, model, selectColumnNames, whereColumnNames, groupColumnNames, values);
+		if(selectColumnNames == null)
+			dedupe(model, list);
+
+		return list;
+	}
+
+	public boolean insert(Object model) throws SQLException {
+		boolean ok = GreenDB.insert(connection, model);
+		if(ok)
+			attach(model);
+
+		return ok;
+	}
+
+	public boolean update(Object model, String... fieldNames) throws SQLException {
+		boolean ok = model instanceof List
+				? GreenDB.isUpdatedAll(GreenDB.update(connection, (List<?>) model, fieldNames))
+				: GreenDB.update(connection, model, model.getClass(), fieldNames);
+		if(ok)
+			attach(model);
+
+		return ok;
+	}
+
+	public boolean delete(Object model) throws SQLException {
+		boolean ok = GreenDB.delete(connection, model);
+		detach(model);
+
+		return ok;
+	}
+
+	public boolean contains(Object model) {
+		EntityKey key = EntityKey.of(EntityMeta.of(model.getClass()), model);
+		return key != null && entities.get(key) == model;
+	}
+
+	public void attach(Object model) {
+		if(model instanceof List) {
+			for (Object o : (List<?>) model)
+				attach(o);
+			return;
+		}
+
+		EntityKey key = EntityKey.of(EntityMeta.of(model.getClass()), model);
+		if(key != null)
+			entities.put(key, model);
+	}
+
+	public void detach(Object model) {
+		if(model instanceof List) {
+			for (Object o : (List<?>) model)
+				detach(o);
+			return;
+		}
+
+		EntityKey key = EntityKey.of(EntityMeta.of(model.getClass()), model);
+		if(key != null && entities.get(key) == model)
+			entities.remove(key);
+	}
+
+	public int size() {
+		return entities.size();
+	}
+
+	public void clear() {
+		entities.clear();
+	}
+
+	public void close() {
+		clear();
+	}
+
+	private <E> void dedupe(Class<E> model, List<E> list) {
+		if(list == null)
+			return;
+
+		EntityMeta meta = EntityMeta.of(model);
+		for (int i = -1, s = list.size(); ++i < s;) {
+			E o = list.get(i);
+			E attached = dedupe(meta, o);
+			if(attached != o)
+				list.set(i, attached);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private <E> E dedupe(EntityMeta meta, E o) {
+		EntityKey key = EntityKey.of(meta, o);
+		if(key == null)
+			return o;
+
+		Object existing = entities.get(key);
+		if(existing != null && existing != o && existing.getClass() == o.getClass())
+			return (E) existing;
+
+		entities.put(key, o);
+		return o;
+	}
+}
@@ -0,0 +1,104 @@
+package greendb;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public final class GreenDBStatistics implements GreenDBMetrics {
+
+	public static final class Histogram {
+		public final static int BUCKETS = 64;
+
+		private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+		private final AtomicLong count = new AtomicLong();
+		private final AtomicLong total = new AtomicLong();
+
+		void record(long value) {
+			buckets.incrementAndGet(value <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(value) - 1);
+			count.incrementAndGet();
+			total.addAndGet(value);
+		}
+
+		public long getCount() {
+			return count.get();
+		}
+
+		public long getTotal() {
+			return total.get();
+		}
+
+		public long getBucket(int i) {
+			return buckets.get(i);
+		}
+
+		public long getPercentile(double percentile) {
+			long target = (long) Math.ceil(count.get() * percentile / 100);
+			long seen = 0;
+			for (int i = -1; ++i < BUCKETS;) {
+				seen += buckets.get(i);
+				if(seen >= target && seen > 0)
+					return i == 63 ? Long.MAX_VALUE : (2L << i) - 1;
+			}
+			return 0;
+		}
+	}
+
+	private final ConcurrentMap<String, Histogram> phases = new ConcurrentHashMap<String, Histogram>();
+	private final ConcurrentMap<String, Histogram> rows = new ConcurrentHashMap<String, Histogram>();
+	private final ConcurrentMap<String, Histogram> batches = new ConcurrentHashMap<String, Histogram>();
+
+	private final AtomicLong statementCacheHits = new AtomicLong();
+	private final AtomicLong statementCacheMisses = new AtomicLong();
+
+	public void phase(Class<?> model, Operation operation, Phase phase, long nanos) {
+		histogram(phases, model.getName()+"."+operation+"."+phase).record(nanos);
+	}
+
+	public void rows(Class<?> model, Operation operation, int rows) {
+		histogram(this.rows, model.getName()+"."+operation).record(rows);
+	}
+
+	public void batch(Class<?> model, Operation operation, int size) {
+		histogram(batches, model.getName()+"."+operation).record(size);
+	}
+
+	public void statementCache(boolean hit) {
+		(hit ? statementCacheHits : statementCacheMisses).incrementAndGet();
+	}
+
+	public Histogram getPhase(Class<?> model, Operation operation, Phase phase) {
+		return phases.get(model.getName()+"."+operation+"."+phase);
+	}
+
+	public Histogram getRows(Class<?> model, Operation operation) {
+		return rows.get(model.getName()+"."+operation);
+	}
+
+	public Histogram getBatches(Class<?> model, Operation operation) {
+		return batches.get(model.getName()+"."+operation);
+	}
+
+	public Map<String, Histogram> getPhases() {
+		return phases;
+	}
+
+	public long getStatementCacheHits() {
+		return statementCacheHits.get();
+	}
+
+	public long getStatementCacheMisses() {
+		return statementCacheMisses.get();
+	}
+
+	private static Histogram histogram(ConcurrentMap<String, Histogram> map, String key) {
+		Histogram h = map.get(key);
+		if(h == null) {
+			Histogram old = map.putIfAbsent(key, h = new Histogram());
+			if(old != null)
+				h = old;
+		}
+		return h;
+	}
+}
@@ -0,0 +1,246 @@
+package greendb;
+
+import java.security.SecureRandom;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.jrender.database.DatabaseConnection;
+
+import greendb.annotation.Generator;
+import greendb.annotation.PK;
+
+abstract class IdAllocator {
+	private final static ConcurrentMap<String, IdAllocator> allocators = new ConcurrentHashMap<String, IdAllocator>();
+
+	final static String HILO_TABLE = "greendb_hilo";
+
+	private final static int MAX_RETRIES = 16;
+
+	private static volatile ConnectionSource source;
+
+	abstract Object next(DatabaseConnection connection, Class<?> type) throws SQLException;
+
+	static IdAllocator of(String table, PK pk) {
+		Generator generator = pk.generator();
+		if(generator == Generator.NONE)
+			return null;
+
+		if(generator == Generator.UUID)
+			return UuidAllocator.INSTANCE;
+
+		if(pk.allocationSize() < 1)
+			throw new IllegalArgumentException("Invalid allocation size: "+pk.allocationSize());
+
+		String name = pk.sequence().isEmpty() ? (generator == Generator.SEQUENCE ? table+"_seq" : table) : pk.sequence();
+		String id = generator+":"+name;
+
+		IdAllocator allocator = allocators.get(id);
+		if(allocator == null) {
+			allocator = generator == Generator.SEQUENCE ? new SequenceAllocator(name, pk.allocationSize()) : new HiloAllocator(name, pk.allocationSize());
+			IdAllocator old = allocators.putIfAbsent(id, allocator);
+			if(old != null)
+				allocator = old;
+		}
+		return allocator;
+	}
+
+	static void setConnectionSource(ConnectionSource source) {
+		IdAllocator.source = source;
+	}
+
+	static Object convert(long value, Class<?> type) {
+		if(type == int.class || type == Integer.class)
+			return (int) value;
+		if(type == String.class)
+			return String.valueOf(value);
+
+		return value;
+	}
+
+	private static final class Block {
+		final AtomicLong next;
+		final long limit;
+
+		Block(long first, long size) {
+			this.next = new AtomicLong(first);
+			this.limit = first + size;
+		}
+	}
+
+	private static abstract class BlockAllocator extends IdAllocator {
+		final String name;
+		final int allocationSize;
+
+		private volatile Block block;
+
+		BlockAllocator(String name, int allocationSize) {
+			this.name = name;
+			this.allocationSize = allocationSize;
+		}
+
+		Object next(DatabaseConnection connection, Class<?> type) throws SQLException {
+			while(true) {
+				Block b = block;
+				if(b != null) {
+					long v = b.next.getAndIncrement();
+					if(v < b.limit)
+						return convert(v, type);
+				}
+
+				synchronized (this) {
+					if(block == b)
+						block = new Block(reserve(connection), allocationSize);
+				}
+			}
+		}
+
+		abstract long reserve(DatabaseConnection connection) throws SQLException;
+	}
+
+	private static final class SequenceAllocator extends BlockAllocator {
+		SequenceAllocator(String name, int allocationSize) {
+			super(name, allocationSize);
+		}
+
+		long reserve(DatabaseConnection connection) throws SQLException {
+			PreparedStatement st = connection.prepareStatement(Dialect.of(connection).nextValueSql(name));
+			try {
+				ResultSet rs = st.executeQuery();
+				try {
+					if(!rs.next())
+						throw new SQLException("Sequence "+name+" returned no value");
+
+					return rs.getLong(1);
+				} finally {
+					rs.close();
+				}
+			} finally {
+				st.close();
+			}
+		}
+	}
+
+	private static final class HiloAllocator extends BlockAllocator {
+		HiloAllocator(String name, int allocationSize) {
+			super(name, allocationSize);
+		}
+
+		long reserve(DatabaseConnection connection) throws SQLException {
+			ConnectionSource source = IdAllocator.source;
+			if(source == null) {
+				if(!connection.getAutoCommit())
+					throw new SQLException("To reserve ids for "+name+" inside a transaction, need a connection source: GreenDB.setIdConnectionSource");
+
+				return reserveHi(connection);
+			}
+
+			DatabaseConnection c = source.getConnection();
+			try {
+				if(c == connection && !c.getAutoCommit())
+					throw new SQLException("To reserve ids for "+name+" inside a transaction, need a connection source with its own connections");
+
+				boolean autoCommit = c.getAutoCommit();
+				if(!autoCommit)
+					c.setAutoCommit(true);
+				try {
+					return reserveHi(c);
+				} finally {
+					if(!autoCommit)
+						c.setAutoCommit(false);
+				}
+			} finally {
+				source.release(c);
+			}
+		}
+
+		private long reserveHi(DatabaseConnection connection) throws SQLException {
+			for (int attempt = 0; attempt < MAX_RETRIES; attempt++) {
+				Long hi = current(connection);
+				if(hi == null) {
+					if(create(connection))
+						return allocationSize;
+				} else if(compareAndSet(connection, hi, hi + 1))
+					return hi * allocationSize;
+			}
+			throw new SQLException("Could not reserve a hi value for "+name+" after "+MAX_RETRIES+" attempts");
+		}
+
+		private Long current(DatabaseConnection connection) throws SQLException {
+			PreparedStatement st = connection.prepareStatement("SELECT next_hi FROM "+HILO_TABLE+" WHERE name=?");
+			try {
+				st.setString(1, name);
+				ResultSet rs = st.executeQuery();
+				try {
+					return rs.next() ? rs.getLong(1) : null;
+				} finally {
+					rs.close();
+				}
+			} finally {
+				st.close();
+			}
+		}
+
+		private boolean create(DatabaseConnection connection) throws SQLException {
+			PreparedStatement st = connection.prepareStatement("INSERT INTO "+HILO_TABLE+"(name,next_hi) VALUES(?,2)");
+			try {
+				st.setString(1, name);
+				return st.executeUpdate() > 0;
+			} catch (SQLException e) {
+				if(isDuplicateKey(e))
+					return false;
+
+				throw e;
+			} finally {
+				st.close();
+			}
+		}
+
+		private boolean compareAndSet(DatabaseConnection connection, long expected, long value) throws SQLException {
+			PreparedStatement st = connection.prepareStatement("UPDATE "+HILO_TABLE+" SET next_hi=? WHERE name=? AND next_hi=?");
+			try {
+				st.setLong(1, value);
+				st.setString(2, name);
+				st.setLong(3, expected);
+				return st.executeUpdate() > 0;
+			} finally {
+				st.close();
+			}
+		}
+	}
+
+	private static boolean isDuplicateKey(SQLException e) {
+		if(e instanceof SQLIntegrityConstraintViolationException)
+			return true;
+
+		String state = e.getSQLState();
+		return state != null && state.startsWith("23");
+	}
+
+	private static final class UuidAllocator extends IdAllocator {
+		final static UuidAllocator INSTANCE = new UuidAllocator();
+
+		private final AtomicLong last = new AtomicLong();
+		private final Random random = new Random(new SecureRandom().nextLong());
+
+		Object next(DatabaseConnection connection, Class<?> type) {
+			long now = System.currentTimeMillis() << 12, prev, stamp;
+			do {
+				prev = last.get();
+				stamp = Math.max(now, prev + 1);
+			} while(!last.compareAndSet(prev, stamp));
+
+			long msb = (stamp >>> 12) << 16 | 0x7000L | (stamp & 0xfffL);
+			long lsb = random.nextLong() & 0x3fffffffffffffffL | 0x8000000000000000L;
+
+			UUID uuid = new UUID(msb, lsb);
+			return type == String.class ? uuid.toString() : uuid;
+		}
+	}
+}
@@ -0,0 +1,48 @@
+package greendb;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.WeakHashMap;
+
+final class Mappers {
+	private final static Map<ClassLoader, Map<Class<?>, EntityMapper<?>>> loaders = new WeakHashMap<ClassLoader, Map<Class<?>, EntityMapper<?>>>();
+
+	private Mappers() {}
+
+	@SuppressWarnings("unchecked")
+	static<E> EntityMapper<E> of(Class<E> model) {
+		ClassLoader loader = model.getClassLoader();
+		if(loader == null)
+			return null;
+
+		synchronized (loaders) {
+			Map<Class<?>, EntityMapper<?>> mappers = loaders.get(loader);
+			if(mappers == null) {
+				mappers = load(loader);
+				loaders.put(loader, mappers);
+			}
+			return (EntityMapper<E>) mappers.get(model);
+		}
+	}
+
+	private static Map<Class<?>, EntityMapper<?>> load(ClassLoader loader) {
+		Map<Class<?>, EntityMapper<?>> mappers = new HashMap<Class<?>, EntityMapper<?>>();
+
+		@SuppressWarnings("rawtypes")
+		Iterator<EntityMapper> it = ServiceLoader.load(EntityMapper.class, loader).iterator();
+		while(true) {
+			try {
+				if(!it.hasNext())
+					break;
+
+				EntityMapper<?> mapper = it.next();
+				mappers.put(mapper.getModel(), mapper);
+			} catch (ServiceConfigurationError e) {}
+		}
+
+		return mappers;
+	}
+}
@@ -0,0 +1,64 @@
+package greendb;
+
+import greendb.GreenDBMetrics.Operation;
+import greendb.GreenDBMetrics.Phase;
+
+class Probe {
+	private final static Probe NOOP = new Probe();
+
+	private static volatile GreenDBMetrics metrics;
+
+	private Probe() {}
+
+	static void setMetrics(GreenDBMetrics metrics) {
+		Probe.metrics = metrics;
+	}
+
+	static GreenDBMetrics getMetrics() {
+		return metrics;
+	}
+
+	static Probe start(Class<?> model, Operation operation) {
+		GreenDBMetrics m = metrics;
+		return m == null ? NOOP : new Active(m, model, operation);
+	}
+
+	static void statementCache(boolean hit) {
+		GreenDBMetrics m = metrics;
+		if(m != null)
+			m.statementCache(hit);
+	}
+
+	void phase(Phase phase) {}
+
+	void rows(int rows) {}
+
+	void batch(int size) {}
+
+	private static final class Active extends Probe {
+		private final GreenDBMetrics metrics;
+		private final Class<?> model;
+		private final Operation operation;
+		private long last = System.nanoTime();
+
+		Active(GreenDBMetrics metrics, Class<?> model, Operation operation) {
+			this.metrics = metrics;
+			this.model = model;
+			this.operation = operation;
+		}
+
+		void phase(Phase phase) {
+			long now = System.nanoTime();
+			metrics.phase(model, operation, phase, now - last);
+			last = now;
+		}
+
+		void rows(int rows) {
+			metrics.rows(model, operation, rows);
+		}
+
+		void batch(int size) {
+			metrics.batch(model, operation, size);
+		}
+	}
+}
@@ -0,0 +1,178 @@
+package greendb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+public final class QueryCache {
+	private final static QueryCache instance = new QueryCache();
+
+	private final ConcurrentMap<String, AtomicLong> versions = new ConcurrentHashMap<String, AtomicLong>();
+	private final LinkedHashMap<Key, CachedResult> results;
+
+	private volatile int capacity;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final AtomicLong invalidations = new AtomicLong();
+
+	private QueryCache() {
+		this.results = new LinkedHashMap<Key, CachedResult>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<Key, CachedResult> eldest) {
+				if(size() <= capacity)
+					return false;
+
+				evictions.incrementAndGet();
+				return true;
+			}
+		};
+	}
+
+	public static QueryCache getInstance() {
+		return instance;
+	}
+
+	public void setCapacity(int capacity) {
+		if(capacity < 0)
+			throw new IllegalArgumentException("Invalid query cache capacity: "+capacity);
+
+		this.capacity = capacity;
+		if(capacity == 0)
+			clear();
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public boolean isEnabled() {
+		return capacity > 0;
+	}
+
+	long version(String table) {
+		AtomicLong v = versions.get(table);
+		return v == null ? 0 : v.get();
+	}
+
+	void bump(String table) {
+		AtomicLong v = versions.get(table);
+		if(v == null) {
+			AtomicLong old = versions.putIfAbsent(table, v = new AtomicLong());
+			if(old != null)
+				v = old;
+		}
+		v.incrementAndGet();
+	}
+
+	<E> List<E> get(EntityMeta meta, Key key) {
+		CachedResult r;
+		synchronized (results) {
+			r = results.get(key);
+			if(r != null && r.version != version(meta.table)) {
+				results.remove(key);
+				invalidations.incrementAndGet();
+				r = null;
+			}
+		}
+
+		if(r == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+
+		hits.incrementAndGet();
+
+		List<E> list = new ArrayList<E>(r.rows.size());
+		for (Object[] values : r.rows)
+			list.add(meta.<E>restore(values));
+
+		return list;
+	}
+
+	void put(EntityMeta meta, Key key, long version, List<?> list) {
+		List<Object[]> rows = new ArrayList<Object[]>(list == null ? 0 : list.size());
+		if(list != null) {
+			for (Object o : list)
+				rows.add(meta.detach(o));
+		}
+
+		if(version != version(meta.table))
+			return;
+
+		synchronized (results) {
+			results.put(key, new CachedResult(version, rows));
+		}
+	}
+
+	public void clear() {
+		synchronized (results) {
+			results.clear();
+		}
+	}
+
+	public int size() {
+		synchronized (results) {
+			return results.size();
+		}
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	public long getInvalidations() {
+		return invalidations.get();
+	}
+
+	private static final class CachedResult {
+		final long version;
+		final List<Object[]> rows;
+
+		CachedResult(long version, List<Object[]> rows) {
+			this.version = version;
+			this.rows = rows;
+		}
+	}
+
+	static final class Key {
+		private final Class<?> model;
+		private final String sql;
+		private final Object[] values;
+		private final int hash;
+
+		Key(Class<?> model, String sql, Object[] values) {
+			this.model = model;
+			this.sql = sql;
+			this.values = values.clone();
+			this.hash = (model.hashCode() * 31 + sql.hashCode()) * 31 + Arrays.hashCode(this.values);
+		}
+
+		public int hashCode() {
+			return hash;
+		}
+
+		public boolean equals(Object o) {
+			if(!(o instanceof Key))
+				return false;
+
+			Key k = (Key) o;
+			return hash == k.hash && model == k.model && sql.equals(k.sql) && Arrays.equals(values, k.values);
+		}
+	}
+}
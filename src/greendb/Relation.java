@@ -0,0 +1,63 @@
+package greendb;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.jrender.exception.JRenderError;
+
+import greendb.annotation.ManyToOne;
+import greendb.annotation.OneToMany;
+
+final class Relation {
+	final String name;
+	final boolean toMany;
+	final boolean eager;
+	final Class<?> target;
+	final String foreignKey;
+	final FieldAccessor accessor;
+
+	private Relation(Field field, boolean toMany, boolean eager, Class<?> target, String foreignKey) {
+		this.name = field.getName();
+		this.toMany = toMany;
+		this.eager = eager;
+		this.target = target;
+		this.foreignKey = foreignKey;
+		this.accessor = FieldAccessor.of(field);
+	}
+
+	static Relation of(Field field) {
+		ManyToOne one = field.getAnnotation(ManyToOne.class);
+		if(one != null)
+			return new Relation(field, false, one.eager(), field.getType(), one.value());
+
+		OneToMany many = field.getAnnotation(OneToMany.class);
+		if(!field.getType().isAssignableFrom(ArrayList.class))
+			throw new JRenderError("@OneToMany field must be a List or Collection: "+field);
+
+		Type type = field.getGenericType();
+		if(!(type instanceof ParameterizedType) || !(((ParameterizedType) type).getActualTypeArguments()[0] instanceof Class))
+			throw new JRenderError("Cannot resolve the element type of @OneToMany field: "+field);
+
+		return new Relation(field, true, many.eager(), (Class<?>) ((ParameterizedType) type).getActualTypeArguments()[0], many.value());
+	}
+
+	static Relation[] of(Field[] fields) {
+		Relation[] relations = new Relation[fields.length];
+		for (int i = -1; ++i < fields.length;)
+			relations[i] = of(fields[i]);
+
+		return relations;
+	}
+
+	static String[] eager(Relation[] relations) {
+		List<String> names = new ArrayList<String>();
+		for (Relation r : relations) {
+			if(r.eager)
+				names.add(r.name);
+		}
+		return names.toArray(new String[names.size()]);
+	}
+}
@@ -0,0 +1,117 @@
+package greendb;
+
+import java.lang.ref.WeakReference;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+import com.jrender.exception.JRenderError;
+
+final class RowMapper<E> {
+	private final EntityMeta meta;
+	private final String[] fieldNames;
+	private final WeakReference<ResultSet> source;
+
+	private final int[] indexes;
+	private final FieldAccessor[] accessors;
+
+	private RowMapper(EntityMeta meta, ResultSet rs, String[] fieldNames) throws SQLException {
+		this.meta = meta;
+		this.fieldNames = fieldNames == null ? null : fieldNames.clone();
+		this.source = new WeakReference<ResultSet>(rs);
+
+		ResultSetMetaData md = rs.getMetaData();
+		int count = md.getColumnCount();
+
+		int[] fields = new int[count + 1];
+		boolean[] mapped = new boolean[meta.columns.length];
+		for (int c = 0; ++c <= count;) {
+			fields[c] = resolve(md.getColumnLabel(c), mapped, true);
+			if(fields[c] != -1)
+				mapped[fields[c]] = true;
+		}
+
+		for (int c = 0; ++c <= count;) {
+			if(fields[c] != -1)
+				continue;
+
+			fields[c] = resolve(md.getColumnLabel(c), mapped, false);
+			if(fields[c] != -1)
+				mapped[fields[c]] = true;
+		}
+
+		int[] indexes = new int[count];
+		FieldAccessor[] accessors = new FieldAccessor[count];
+		int length = 0;
+
+		for (int c = 0; ++c <= count;) {
+			if(fields[c] == -1)
+				continue;
+
+			indexes[length] = c;
+			accessors[length++] = meta.accessors[fields[c]];
+		}
+
+		this.indexes = Arrays.copyOf(indexes, length);
+		this.accessors = Arrays.copyOf(accessors, length);
+	}
+
+	private int resolve(String label, boolean[] mapped, boolean byColumn) {
+		for (int i = -1; ++i < meta.columns.length;) {
+			if(mapped[i])
+				continue;
+
+			String fieldName = meta.columns[i].getName();
+			if(!(byColumn ? meta.columnNames[i] : fieldName).equalsIgnoreCase(label))
+				continue;
+
+			if(fieldNames == null)
+				return i;
+
+			for (String name : fieldNames) {
+				if(fieldName.equals(name))
+					return i;
+			}
+		}
+		return -1;
+	}
+
+	static<E> RowMapper<E> of(EntityMeta meta, ResultSet rs, String[] fieldNames) {
+		try {
+			return new RowMapper<E>(meta, rs, fieldNames);
+		} catch (SQLException e) {
+			throw new JRenderError(e);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	static<E> RowMapper<E> cached(EntityMeta meta, ResultSet rs, String[] fieldNames) {
+		RowMapper<E> mapper = (RowMapper<E>) meta.lastMapper;
+		if(mapper == null || mapper.source.get() != rs || !Arrays.equals(mapper.fieldNames, fieldNames)) {
+			mapper = of(meta, rs, fieldNames);
+			meta.lastMapper = mapper;
+		}
+
+		return mapper;
+	}
+
+	E next(ResultSet rs) {
+		try {
+			return rs.next() ? map(rs) : null;
+		} catch (SQLException e) {
+			throw new JRenderError(e);
+		}
+	}
+
+	E map(ResultSet rs) throws SQLException {
+		E instance = meta.newInstance();
+		for (int i = -1; ++i < indexes.length;)
+			accessors[i].read(instance, rs, indexes[i]);
+
+		if(meta.snapshots != null)
+			meta.snapshots.take(instance);
+
+		return instance;
+	}
+}
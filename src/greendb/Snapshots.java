@@ -0,0 +1,103 @@
+package greendb;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+final class Snapshots {
+	private final Map<Ref, Object[]> snapshots = new HashMap<Ref, Object[]>();
+	private final ReferenceQueue<Object> queue = new ReferenceQueue<Object>();
+	private final FieldAccessor[] accessors;
+
+	Snapshots(FieldAccessor[] accessors) {
+		this.accessors = accessors;
+	}
+
+	void take(Object entity) {
+		Object[] values = new Object[accessors.length];
+		for (int i = -1; ++i < accessors.length;)
+			values[i] = copy(accessors[i].get(entity));
+
+		synchronized (this) {
+			expunge();
+			snapshots.put(new Ref(entity, queue), values);
+		}
+	}
+
+	synchronized Object[] get(Object entity) {
+		expunge();
+		return snapshots.get(new Ref(entity, null));
+	}
+
+	synchronized void remove(Object entity) {
+		expunge();
+		snapshots.remove(new Ref(entity, null));
+	}
+
+	boolean isChanged(Object[] snapshot, int i, Object entity) {
+		Object a = snapshot[i];
+		Object b = accessors[i].get(entity);
+
+		if(a == b)
+			return false;
+
+		if(a == null || b == null)
+			return true;
+
+		if(a.getClass().isArray())
+			return !b.getClass().isArray() || !Arrays.deepEquals(new Object[] {a}, new Object[] {b});
+
+		return !a.equals(b);
+	}
+
+	static Object copy(Object value) {
+		if(value instanceof Date)
+			return ((Date) value).clone();
+
+		if(value instanceof Calendar)
+			return ((Calendar) value).clone();
+
+		if(value == null || !value.getClass().isArray())
+			return value;
+
+		int length = Array.getLength(value);
+		Object copy = Array.newInstance(value.getClass().getComponentType(), length);
+		System.arraycopy(value, 0, copy, 0, length);
+		return copy;
+	}
+
+	private void expunge() {
+		for (Reference<?> ref; (ref = queue.poll()) != null;)
+			snapshots.remove(ref);
+	}
+
+	private static final class Ref extends WeakReference<Object> {
+		private final int hash;
+
+		Ref(Object referent, ReferenceQueue<Object> queue) {
+			super(referent, queue);
+			this.hash = System.identityHashCode(referent);
+		}
+
+		public int hashCode() {
+			return hash;
+		}
+
+		public boolean equals(Object o) {
+			if(this == o)
+				return true;
+
+			if(!(o instanceof Ref))
+				return false;
+
+			Object referent = get();
+			return referent != null && referent == ((Ref) o).get();
+		}
+	}
+}
@@ -0,0 +1,179 @@
+package greendb;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.jrender.database.DatabaseConnection;
+import com.jrender.database.DatabasePreparedStatement;
+
+public final class StatementCache {
+	private final static Map<DatabaseConnection, StatementCache> caches = new HashMap<DatabaseConnection, StatementCache>();
+
+	private static volatile int defaultCapacity = 64;
+
+	private final LinkedHashMap<Key, DatabasePreparedStatement> statements;
+	private final Map<DatabasePreparedStatement, Key> checkedOut = new IdentityHashMap<DatabasePreparedStatement, Key>();
+	private final int capacity;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	private StatementCache(final int capacity) {
+		this.capacity = capacity;
+		this.statements = new LinkedHashMap<Key, DatabasePreparedStatement>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<Key, DatabasePreparedStatement> eldest) {
+				if(size() <= capacity)
+					return false;
+
+				evictions.incrementAndGet();
+				close(eldest.getValue());
+				return true;
+			}
+		};
+	}
+
+	static StatementCache of(DatabaseConnection connection) {
+		synchronized (caches) {
+			StatementCache cache = caches.get(connection);
+			if(cache == null) {
+				purgeClosed();
+				cache = new StatementCache(defaultCapacity);
+				caches.put(connection, cache);
+			}
+			return cache;
+		}
+	}
+
+	static void remove(DatabaseConnection connection) {
+		StatementCache cache;
+		synchronized (caches) {
+			cache = caches.remove(connection);
+		}
+
+		if(cache != null)
+			cache.clear();
+	}
+
+	private static void purgeClosed() {
+		for (Iterator<Map.Entry<DatabaseConnection, StatementCache>> it = caches.entrySet().iterator(); it.hasNext();) {
+			Map.Entry<DatabaseConnection, StatementCache> e = it.next();
+			try {
+				if(!e.getKey().isClosed())
+					continue;
+			} catch (SQLException ex) {}
+
+			e.getValue().clear();
+			it.remove();
+		}
+	}
+
+	public static void setDefaultCapacity(int capacity) {
+		if(capacity < 1)
+			throw new IllegalArgumentException("Invalid statement cache capacity: "+capacity);
+
+		defaultCapacity = capacity;
+	}
+
+	public static int getDefaultCapacity() {
+		return defaultCapacity;
+	}
+
+	DatabasePreparedStatement prepare(DatabaseConnection connection, String sql) throws SQLException {
+		return prepare(connection, sql, -1);
+	}
+
+	synchronized DatabasePreparedStatement prepare(DatabaseConnection connection, String sql, int autoGeneratedKeys) throws SQLException {
+		Key key = new Key(sql, autoGeneratedKeys);
+		DatabasePreparedStatement st = statements.remove(key);
+		if(st != null && !st.isClosed()) {
+			hits.incrementAndGet();
+			Probe.statementCache(true);
+			st.clearParameters();
+			checkedOut.put(st, key);
+			return st;
+		}
+
+		misses.incrementAndGet();
+		Probe.statementCache(false);
+		st = autoGeneratedKeys == -1 ? connection.prepareStatement(sql) : connection.prepareStatement(sql, autoGeneratedKeys);
+		checkedOut.put(st, key);
+		return st;
+	}
+
+	void release(DatabasePreparedStatement st) {
+		synchronized (this) {
+			Key key = checkedOut.remove(st);
+			if(key != null && !statements.containsKey(key)) {
+				statements.put(key, st);
+				return;
+			}
+		}
+
+		close(st);
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public synchronized int size() {
+		return statements.size();
+	}
+
+	public void clear() {
+		List<DatabasePreparedStatement> closing;
+		synchronized (this) {
+			closing = new ArrayList<DatabasePreparedStatement>(statements.values());
+			statements.clear();
+		}
+
+		for (DatabasePreparedStatement st : closing)
+			close(st);
+	}
+
+	private static void close(DatabasePreparedStatement st) {
+		try {
+			st.close();
+		} catch (SQLException e) {}
+	}
+
+	private static final class Key {
+		private final String sql;
+		private final int autoGeneratedKeys;
+
+		Key(String sql, int autoGeneratedKeys) {
+			this.sql = sql;
+			this.autoGeneratedKeys = autoGeneratedKeys;
+		}
+
+		public int hashCode() {
+			return sql.hashCode() * 31 + autoGeneratedKeys;
+		}
+
+		public boolean equals(Object o) {
+			return o instanceof Key && ((Key) o).autoGeneratedKeys == autoGeneratedKeys && ((Key) o).sql.equals(sql);
+		}
+	}
+}
@@ -0,0 +1,5 @@
+package greendb.annotation;
+
+public enum Generator {
+	NONE, HILO, SEQUENCE, UUID
+}
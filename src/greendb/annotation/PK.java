@@ -9,4 +9,7 @@ import java.lang.annotation.Target;
 @Retention(RetentionPolicy.RUNTIME)
 public @interface PK {
 	public boolean autoIncrement() default false;
+	public Generator generator() default Generator.NONE;
+	public String sequence() default "";
+	public int allocationSize() default 50;
 }
@@ -0,0 +1,338 @@
+package greendb.processor;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+import greendb.annotation.Column;
+import greendb.annotation.Table;
+
+@SupportedAnnotationTypes("greendb.annotation.Table")
+public final class MapperProcessor extends AbstractProcessor {
+	private final static String SERVICE = "META-INF/services/greendb.EntityMapper";
+
+	private final Set<String> mappers = new TreeSet<String>();
+
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		if(roundEnv.processingOver()) {
+			if(!mappers.isEmpty())
+				writeServices();
+			return false;
+		}
+
+		for (Element e : roundEnv.getElementsAnnotatedWith(Table.class)) {
+			if(e.getKind() != ElementKind.CLASS)
+				continue;
+
+			TypeElement type = (TypeElement) e;
+			String reason = unsupported(type);
+			if(reason != null) {
+				processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE, "No mapper generated, "+reason+": "+type.getQualifiedName(), type);
+				continue;
+			}
+
+			try {
+				mappers.add(generate(type));
+			} catch (IOException ex) {
+				processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Could not generate mapper: "+ex.getMessage(), type);
+			}
+		}
+		return false;
+	}
+
+	private String unsupported(TypeElement type) {
+		if(type.getModifiers().contains(Modifier.ABSTRACT))
+			return "abstract class";
+		if(!type.getTypeParameters().isEmpty())
+			return "generic class";
+
+		for (Element e = type; e.getKind() != ElementKind.PACKAGE; e = e.getEnclosingElement()) {
+			if(e.getModifiers().contains(Modifier.PRIVATE))
+				return "private class";
+			if(e instanceof TypeElement && ((TypeElement) e).getNestingKind() == NestingKind.MEMBER && !e.getModifiers().contains(Modifier.STATIC))
+				return "inner class";
+		}
+
+		for (ExecutableElement c : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+			if(c.getParameters().isEmpty() && !c.getModifiers().contains(Modifier.PRIVATE))
+				return null;
+		}
+		return "no default constructor";
+	}
+
+	private String generate(TypeElement type) throws IOException {
+		String pkg = packageOf(type).getQualifiedName().toString();
+		String entity = type.getQualifiedName().toString();
+		String name = (pkg.isEmpty() ? entity : entity.substring(pkg.length() + 1)).replace('.', '_')+"_Mapper";
+
+		List<VariableElement> fields = fields(type, pkg);
+
+		StringBuilder q = new StringBuilder();
+		if(!pkg.isEmpty())
+			q.append("package ").append(pkg).append(";\n\n");
+
+		q.append("import java.sql.PreparedStatement;\n");
+		q.append("import java.sql.ResultSet;\n");
+		q.append("import java.sql.SQLException;\n\n");
+		q.append("public final class ").append(name).append(" implements greendb.EntityMapper<").append(entity).append("> {\n");
+		q.append("\tprivate final static String[] FIELDS = {");
+		for (int i = -1; ++i < fields.size();)
+			q.append(i == 0 ? "" : ", ").append('"').append(fields.get(i).getSimpleName()).append('"');
+		q.append("};\n\n");
+
+		q.append("\tpublic Class<").append(entity).append("> getModel() {\n");
+		q.append("\t\treturn ").append(entity).append(".class;\n");
+		q.append("\t}\n\n");
+
+		q.append("\tpublic String[] getFieldNames() {\n");
+		q.append("\t\treturn FIELDS.clone();\n");
+		q.append("\t}\n\n");
+
+		q.append("\tpublic ").append(entity).append(" newInstance() {\n");
+		q.append("\t\treturn new ").append(entity).append("();\n");
+		q.append("\t}\n\n");
+
+		q.append("\tpublic Object get(").append(entity).append(" e, int field) {\n");
+		q.append("\t\tswitch (field) {\n");
+		for (int i = -1; ++i < fields.size();)
+			q.append("\t\tcase ").append(i).append(": return e.").append(fields.get(i).getSimpleName()).append(";\n");
+		q.append("\t\tdefault: throw new IndexOutOfBoundsException(String.valueOf(field));\n");
+		q.append("\t\t}\n");
+		q.append("\t}\n\n");
+
+		q.append("\t@SuppressWarnings(\"unchecked\")\n");
+		q.append("\tpublic void set(").append(entity).append(" e, int field, Object value) {\n");
+		q.append("\t\tswitch (field) {\n");
+		for (int i = -1; ++i < fields.size();)
+			q.append("\t\tcase ").append(i).append(": ").append(set(fields.get(i))).append(" break;\n");
+		q.append("\t\tdefault: throw new IndexOutOfBoundsException(String.valueOf(field));\n");
+		q.append("\t\t}\n");
+		q.append("\t}\n\n");
+
+		q.append("\t@SuppressWarnings(\"unchecked\")\n");
+		q.append("\tpublic void read(").append(entity).append(" e, int field, ResultSet rs, int column) throws SQLException {\n");
+		q.append("\t\tswitch (field) {\n");
+		for (int i = -1; ++i < fields.size();)
+			q.append("\t\tcase ").append(i).append(": ").append(read(fields.get(i))).append(" break;\n");
+		q.append("\t\tdefault: throw new IndexOutOfBoundsException(String.valueOf(field));\n");
+		q.append("\t\t}\n");
+		q.append("\t}\n\n");
+
+		q.append("\tpublic void bind(").append(entity).append(" e, int field, PreparedStatement ps, int index) throws SQLException {\n");
+		q.append("\t\tswitch (field) {\n");
+		for (int i = -1; ++i < fields.size();)
+			q.append("\t\tcase ").append(i).append(": ").append(bind(fields.get(i))).append(" break;\n");
+		q.append("\t\tdefault: throw new IndexOutOfBoundsException(String.valueOf(field));\n");
+		q.append("\t\t}\n");
+		q.append("\t}\n");
+		q.append("}\n");
+
+		String qualifiedName = pkg.isEmpty() ? name : pkg+"."+name;
+		Writer w = processingEnv.getFiler().createSourceFile(qualifiedName, type).openWriter();
+		try {
+			w.write(q.toString());
+		} finally {
+			w.close();
+		}
+
+		return qualifiedName;
+	}
+
+	private List<VariableElement> fields(TypeElement type, String pkg) {
+		Map<String, VariableElement> fields = new LinkedHashMap<String, VariableElement>();
+		Set<String> shadowed = new HashSet<String>();
+
+		for (TypeElement t = type; t != null; t = superclass(t)) {
+			for (VariableElement f : ElementFilter.fieldsIn(t.getEnclosedElements())) {
+				if(f.getAnnotation(Column.class) == null || f.getModifiers().contains(Modifier.STATIC))
+					continue;
+
+				String name = f.getSimpleName().toString();
+				if(fields.containsKey(name) || shadowed.contains(name)) {
+					fields.remove(name);
+					shadowed.add(name);
+					continue;
+				}
+
+				if(isAccessible(f, t, pkg))
+					fields.put(name, f);
+				else
+					shadowed.add(name);
+			}
+		}
+
+		return new ArrayList<VariableElement>(fields.values());
+	}
+
+	private boolean isAccessible(VariableElement f, TypeElement declaring, String pkg) {
+		Set<Modifier> modifiers = f.getModifiers();
+		if(modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.FINAL))
+			return false;
+
+		return modifiers.contains(Modifier.PUBLIC) || packageOf(declaring).getQualifiedName().contentEquals(pkg);
+	}
+
+	private TypeElement superclass(TypeElement type) {
+		TypeMirror s = type.getSuperclass();
+		if(s.getKind() != TypeKind.DECLARED)
+			return null;
+
+		TypeElement t = (TypeElement) ((DeclaredType) s).asElement();
+		return t.getQualifiedName().contentEquals("java.lang.Object") ? null : t;
+	}
+
+	private PackageElement packageOf(Element e) {
+		return processingEnv.getElementUtils().getPackageOf(e);
+	}
+
+	private String set(VariableElement f) {
+		String field = "e."+f.getSimpleName();
+		TypeMirror type = f.asType();
+
+		switch (type.getKind()) {
+		case INT: return "if(value != null) "+field+" = ((Number) value).intValue();";
+		case LONG: return "if(value != null) "+field+" = ((Number) value).longValue();";
+		case DOUBLE: return "if(value != null) "+field+" = ((Number) value).doubleValue();";
+		case FLOAT: return "if(value != null) "+field+" = ((Number) value).floatValue();";
+		case SHORT: return "if(value != null) "+field+" = ((Number) value).shortValue();";
+		case BYTE: return "if(value != null) "+field+" = ((Number) value).byteValue();";
+		case BOOLEAN: return "if(value != null) "+field+" = value instanceof Number ? ((Number) value).intValue() != 0 : (Boolean) value;";
+		case CHAR: return "if(value != null) "+field+" = value instanceof String ? ((String) value).charAt(0) : (Character) value;";
+		default: return field+" = ("+erasure(type)+") value;";
+		}
+	}
+
+	private String read(VariableElement f) {
+		String field = "e."+f.getSimpleName();
+		TypeMirror type = f.asType();
+
+		switch (type.getKind()) {
+		case INT: return readPrimitive(field, "int", "Int");
+		case LONG: return readPrimitive(field, "long", "Long");
+		case DOUBLE: return readPrimitive(field, "double", "Double");
+		case FLOAT: return readPrimitive(field, "float", "Float");
+		case SHORT: return readPrimitive(field, "short", "Short");
+		case BYTE: return readPrimitive(field, "byte", "Byte");
+		case BOOLEAN: return "{ boolean v = rs.getBoolean(column); if(v || !rs.wasNull()) "+field+" = v; }";
+		case CHAR: return "{ String s = rs.getString(column); if(s != null) "+field+" = s.charAt(0); }";
+		default:
+		}
+
+		String erasure = erasure(type);
+		if(erasure.equals("java.lang.String"))
+			return field+" = rs.getString(column);";
+		if(erasure.equals("java.lang.Character"))
+			return "{ String s = rs.getString(column); "+field+" = s == null ? null : Character.valueOf(s.charAt(0)); }";
+		if(erasure.equals("java.lang.Integer"))
+			return readBoxed(field, "int", "Int", "Integer");
+		if(erasure.equals("java.lang.Long"))
+			return readBoxed(field, "long", "Long", "Long");
+		if(erasure.equals("java.lang.Double"))
+			return readBoxed(field, "double", "Double", "Double");
+		if(erasure.equals("java.lang.Float"))
+			return readBoxed(field, "float", "Float", "Float");
+		if(erasure.equals("java.lang.Short"))
+			return readBoxed(field, "short", "Short", "Short");
+		if(erasure.equals("java.lang.Byte"))
+			return readBoxed(field, "byte", "Byte", "Byte");
+		if(erasure.equals("java.lang.Boolean"))
+			return readBoxed(field, "boolean", "Boolean", "Boolean");
+
+		return field+" = ("+erasure+") rs.getObject(column);";
+	}
+
+	private String readPrimitive(String field, String type, String getter) {
+		return "{ "+type+" v = rs.get"+getter+"(column); if(v != 0 || !rs.wasNull()) "+field+" = v; }";
+	}
+
+	private String readBoxed(String field, String type, String getter, String box) {
+		return "{ "+type+" v = rs.get"+getter+"(column); "+field+" = rs.wasNull() ? null : "+box+".valueOf(v); }";
+	}
+
+	private String bind(VariableElement f) {
+		String field = "e."+f.getSimpleName();
+		TypeMirror type = f.asType();
+
+		switch (type.getKind()) {
+		case INT: return "ps.setInt(index, "+field+");";
+		case LONG: return "ps.setLong(index, "+field+");";
+		case DOUBLE: return "ps.setDouble(index, "+field+");";
+		case FLOAT: return "ps.setFloat(index, "+field+");";
+		case SHORT: return "ps.setShort(index, "+field+");";
+		case BYTE: return "ps.setByte(index, "+field+");";
+		case BOOLEAN: return "ps.setBoolean(index, "+field+");";
+		case CHAR: return "ps.setString(index, String.valueOf("+field+"));";
+		default:
+		}
+
+		if(erasure(type).equals("java.lang.Character"))
+			return "if("+field+" == null) ps.setObject(index, null); else ps.setString(index, "+field+".toString());";
+
+		return "ps.setObject(index, "+field+");";
+	}
+
+	private String erasure(TypeMirror type) {
+		return processingEnv.getTypeUtils().erasure(type).toString();
+	}
+
+	private void writeServices() {
+		Set<String> services = new TreeSet<String>(mappers);
+		try {
+			FileObject existing = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", SERVICE);
+			BufferedReader r = new BufferedReader(new InputStreamReader(existing.openInputStream(), "UTF-8"));
+			try {
+				for (String line; (line = r.readLine()) != null;) {
+					line = line.trim();
+					if(!line.isEmpty())
+						services.add(line);
+				}
+			} finally {
+				r.close();
+			}
+		} catch (IOException e) {}
+
+		try {
+			Writer w = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", SERVICE).openWriter();
+			try {
+				for (String service : services)
+					w.write(service+"\n");
+			} finally {
+				w.close();
+			}
+		} catch (IOException e) {
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Could not write "+SERVICE+": "+e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,111 @@
+package greendb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.jrender.database.DatabaseConnection;
+
+public class AsyncGreenDBTest {
+	private final static long LATENCY = 200;
+
+	private H2 db;
+	private final AtomicInteger running = new AtomicInteger();
+	private final AtomicInteger peak = new AtomicInteger();
+
+	@Before
+	public void open() throws Exception {
+		db = new H2(Person.ddl(), "CREATE ALIAS SLEEP FOR 'java.lang.Thread.sleep'");
+	}
+
+	@After
+	public void close() throws Exception {
+		db.close();
+	}
+
+	@Test
+	public void overlapsLatency() throws Exception {
+		AsyncGreenDB async = new AsyncGreenDB(db, 4);
+		try {
+			long elapsed = run(async, 4);
+
+			assertEquals(4, peak.get());
+			assertTrue("took "+elapsed+"ms", elapsed < 3 * LATENCY);
+		} finally {
+			async.shutdown();
+		}
+	}
+
+	@Test
+	public void boundsConcurrency() throws Exception {
+		AsyncGreenDB async = new AsyncGreenDB(db, 2);
+		try {
+			long elapsed = run(async, 6);
+
+			assertEquals(2, peak.get());
+			assertTrue("took "+elapsed+"ms", elapsed >= 3 * LATENCY);
+			assertEquals(2, async.getAvailablePermits());
+		} finally {
+			async.shutdown();
+		}
+	}
+
+	@Test
+	public void runsGreenDBOperations() throws Exception {
+		AsyncGreenDB async = new AsyncGreenDB(db, 2);
+		try {
+			List<Future<Boolean>> inserts = new ArrayList<Future<Boolean>>();
+			for (Person p : GreenDBTest.people(4))
+				inserts.add(async.insertAsync(p));
+			for (Future<Boolean> f : inserts)
+				assertTrue(f.get(5, TimeUnit.SECONDS));
+
+			assertEquals(4, async.findAllAsync(Person.class).get(5, TimeUnit.SECONDS).size());
+		} finally {
+			async.shutdown();
+		}
+	}
+
+	private long run(AsyncGreenDB async, int operations) throws Exception {
+		long start = System.nanoTime();
+
+		List<Future<Void>> futures = new ArrayList<Future<Void>>();
+		for (int i = -1; ++i < operations;) {
+			futures.add(async.submit(new AsyncGreenDB.Operation<Void>() {
+				public Void execute(DatabaseConnection connection) throws SQLException {
+					int n = running.incrementAndGet();
+					try {
+						int p;
+						while((p = peak.get()) < n && !peak.compareAndSet(p, n));
+
+						PreparedStatement st = connection.prepareStatement("CALL SLEEP("+LATENCY+")");
+						try {
+							st.execute();
+						} finally {
+							st.close();
+						}
+						return null;
+					} finally {
+						running.decrementAndGet();
+					}
+				}
+			}));
+		}
+
+		for (Future<Void> f : futures)
+			f.get(10, TimeUnit.SECONDS);
+
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+	}
+}
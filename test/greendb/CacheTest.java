@@ -0,0 +1,143 @@
+package greendb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.jrender.database.DatabaseConnection;
+
+public class CacheTest {
+	private H2 db;
+	private DatabaseConnection reader, writer;
+	private EntityCache cache;
+
+	@Before
+	public void open() throws Exception {
+		db = new H2(Person.ddl());
+		reader = db.getConnection();
+		writer = db.getConnection();
+		cache = GreenDB.getEntityCache(Person.class);
+		cache.clear();
+		GreenDB.getQueryCache().clear();
+	}
+
+	@After
+	public void close() throws Exception {
+		GreenDB.getQueryCache().setCapacity(0);
+		for (DatabaseConnection c : new DatabaseConnection[] {reader, writer}) {
+			GreenDB.closeStatements(c);
+			db.release(c);
+		}
+		db.close();
+	}
+
+	@Test
+	public void findByPKFillsAndHits() throws Exception {
+		Person p = new Person("ana", 30);
+		GreenDB.insert(reader, p);
+
+		long hits = cache.getHits();
+		GreenDB.findByPK(reader, Person.class, null, p.id);
+		assertEquals(1, cache.size());
+
+		Person cached = GreenDB.findByPK(reader, Person.class, null, p.id);
+		assertEquals(hits + 1, cache.getHits());
+		assertEquals("ana", cached.name);
+		assertEquals(Person.Status.ACTIVE, cached.status);
+	}
+
+	@Test
+	public void updateInvalidates() throws Exception {
+		Person p = new Person("ana", 30);
+		GreenDB.insert(reader, p);
+		GreenDB.findByPK(reader, Person.class, null, p.id);
+
+		p.age = 31;
+		GreenDB.update(reader, p);
+		assertEquals(0, cache.size());
+		assertEquals(31, GreenDB.findByPK(reader, Person.class, null, p.id).age);
+
+		GreenDB.delete(reader, p);
+		assertNull(GreenDB.findByPK(reader, Person.class, null, p.id));
+	}
+
+	@Test
+	public void transactionDoesNotReadCache() throws Exception {
+		Person p = new Person("ana", 30);
+		GreenDB.insert(reader, p);
+		GreenDB.findByPK(reader, Person.class, null, p.id);
+
+		db.execute("UPDATE person SET age = 50 WHERE id = "+p.id);
+
+		writer.setAutoCommit(false);
+		try {
+			assertEquals(50, GreenDB.findByPK(writer, Person.class, null, p.id).age);
+		} finally {
+			GreenDB.rollback(writer);
+		}
+		assertEquals(30, GreenDB.findByPK(reader, Person.class, null, p.id).age);
+	}
+
+	@Test
+	public void pendingWritesBlockFillsUntilCommit() throws Exception {
+		Person p = new Person("ana", 30);
+		GreenDB.insert(reader, p);
+
+		writer.setAutoCommit(false);
+		p.age = 31;
+		GreenDB.update(writer, p);
+
+		assertEquals(30, GreenDB.findByPK(reader, Person.class, null, p.id).age);
+		assertEquals(0, cache.size());
+
+		GreenDB.commit(writer);
+
+		assertEquals(31, GreenDB.findByPK(reader, Person.class, null, p.id).age);
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void rollbackReleasesPendingTable() throws Exception {
+		Person p = new Person("ana", 30);
+		GreenDB.insert(reader, p);
+
+		writer.setAutoCommit(false);
+		p.age = 31;
+		GreenDB.update(writer, p);
+		GreenDB.rollback(writer);
+
+		assertEquals(30, GreenDB.findByPK(reader, Person.class, null, p.id).age);
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void queryCacheInvalidation() throws Exception {
+		QueryCache queryCache = GreenDB.getQueryCache();
+		queryCache.setCapacity(16);
+
+		GreenDB.insert(reader, GreenDBTest.people(3));
+
+		long hits = queryCache.getHits();
+		assertEquals(3, GreenDB.findAll(reader, Person.class).size());
+		assertEquals(3, GreenDB.findAll(reader, Person.class).size());
+		assertEquals(hits + 1, queryCache.getHits());
+
+		GreenDB.insert(reader, new Person("ana", 30));
+		assertEquals(4, GreenDB.findAll(reader, Person.class).size());
+
+		writer.setAutoCommit(false);
+		GreenDB.insert(writer, new Person("bia", 40));
+
+		List<Person> seen = GreenDB.findAll(reader, Person.class);
+		assertEquals(4, seen.size());
+		assertEquals(0, queryCache.size());
+
+		GreenDB.commit(writer);
+		assertEquals(5, GreenDB.findAll(reader, Person.class).size());
+	}
+}
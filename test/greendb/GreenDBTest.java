@@ -0,0 +1,238 @@
+package greendb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.jrender.database.DatabaseConnection;
+
+public class GreenDBTest {
+	private H2 db;
+	private DatabaseConnection connection;
+
+	@Before
+	public void open() throws Exception {
+		db = new H2(Person.ddl(), Note.ddl(), Renamed.ddl(), Ticket.ddl());
+		connection = db.getConnection();
+		GreenDB.getEntityCache(Person.class).clear();
+		GreenDB.getQueryCache().clear();
+	}
+
+	@After
+	public void close() throws Exception {
+		GreenDB.closeStatements(connection);
+		db.release(connection);
+		db.close();
+	}
+
+	@Test
+	public void insertAssignsGeneratedKey() throws Exception {
+		Person p = new Person("ana", 30);
+		p.created = new Timestamp(1000L);
+
+		assertTrue(GreenDB.insert(connection, p));
+		assertTrue(p.id > 0);
+
+		Person found = GreenDB.findByPK(connection, Person.class, null, p.id);
+		assertNotNull(found);
+		assertEquals("ana", found.name);
+		assertEquals(30, found.age);
+		assertEquals(new Timestamp(1000L), found.created);
+		assertEquals(Person.Status.ACTIVE, found.status);
+	}
+
+	@Test
+	public void insertListAcrossChunks() throws Exception {
+		List<Person> people = people(13);
+
+		assertTrue(GreenDB.insert(connection, people, 4));
+		for (Person p : people)
+			assertTrue(p.id > 0);
+
+		List<Person> all = GreenDB.findAll(connection, Person.class, new String[] {"id"});
+		assertEquals(13, all.size());
+		for (int i = -1; ++i < all.size();) {
+			assertEquals(people.get(i).id, all.get(i).id);
+			assertEquals("p"+i, all.get(i).name);
+		}
+	}
+
+	@Test
+	public void findAllReturnsNullWhenEmpty() throws Exception {
+		assertNull(GreenDB.findAll(connection, Person.class));
+	}
+
+	@Test
+	public void findByColumns() throws Exception {
+		GreenDB.insert(connection, people(6));
+
+		List<Person> found = GreenDB.findByColumns(connection, Person.class, false, null, new String[] {"age"}, null, 22);
+		assertEquals(1, found.size());
+		assertEquals("p2", found.get(0).name);
+
+		Person nameless = new Person(null, 99);
+		GreenDB.insert(connection, nameless);
+		found = GreenDB.findByColumns(connection, Person.class, false, null, new String[] {"name"}, null, (Object) null);
+		assertEquals(1, found.size());
+		assertEquals(nameless.id, found.get(0).id);
+	}
+
+	@Test
+	public void updateAndDelete() throws Exception {
+		Person p = new Person("bia", 40);
+		GreenDB.insert(connection, p);
+
+		p.age = 41;
+		p.status = Person.Status.BLOCKED;
+		assertTrue(GreenDB.update(connection, p));
+
+		Person found = GreenDB.findByPK(connection, Person.class, null, p.id);
+		assertEquals(41, found.age);
+		assertEquals(Person.Status.BLOCKED, found.status);
+
+		assertTrue(GreenDB.delete(connection, p));
+		assertNull(GreenDB.findByPK(connection, Person.class, null, p.id));
+		assertFalse(GreenDB.delete(connection, p));
+	}
+
+	@Test
+	public void deleteList() throws Exception {
+		List<Person> people = people(5);
+		GreenDB.insert(connection, people);
+
+		assertTrue(GreenDB.delete(connection, new ArrayList<Person>(people.subList(1, 4))));
+
+		List<Person> left = GreenDB.findAll(connection, Person.class, new String[] {"id"});
+		assertEquals(2, left.size());
+		assertEquals(people.get(0).id, left.get(0).id);
+		assertEquals(people.get(4).id, left.get(1).id);
+	}
+
+	@Test
+	public void deleteWithoutPrimaryKey() throws Exception {
+		Note a = new Note("ana", "one"), b = new Note("ana", "two"), c = new Note("bia", null);
+		GreenDB.insert(connection, Arrays.asList(a, b, c));
+
+		assertTrue(GreenDB.delete(connection, Arrays.asList(b, c)));
+
+		List<Note> left = GreenDB.findAll(connection, Note.class);
+		assertEquals(1, left.size());
+		assertEquals("one", left.get(0).text);
+	}
+
+	@Test
+	public void upsert() throws Exception {
+		Person p = new Person("caio", 20);
+		assertTrue(GreenDB.upsert(connection, p));
+		assertTrue(p.id > 0);
+
+		p.age = 21;
+		assertTrue(GreenDB.upsert(connection, p));
+
+		List<Person> all = GreenDB.findAll(connection, Person.class);
+		assertEquals(1, all.size());
+		assertEquals(21, all.get(0).age);
+	}
+
+	@Test
+	public void findPage() throws Exception {
+		GreenDB.insert(connection, people(7));
+
+		List<String> names = new ArrayList<String>();
+		Object[] key = null;
+		GreenDBPage<Person> page;
+		do {
+			page = GreenDB.findPage(connection, Person.class, 3, key, "age");
+			for (Person p : page.getItems())
+				names.add(p.name);
+			key = page.getNextKey();
+		} while(page.hasNext());
+
+		assertEquals(Arrays.asList("p0", "p1", "p2", "p3", "p4", "p5", "p6"), names);
+	}
+
+	@Test
+	public void findPageByConvertedColumn() throws Exception {
+		List<Person> people = people(5);
+		for (int i = -1; ++i < people.size();) {
+			people.get(i).created = new Timestamp(5000L - i * 1000L);
+			people.get(i).status = i % 2 == 0 ? Person.Status.ACTIVE : Person.Status.BLOCKED;
+		}
+		GreenDB.insert(connection, people);
+
+		List<String> names = new ArrayList<String>();
+		Object[] key = null;
+		GreenDBPage<Person> page;
+		do {
+			page = GreenDB.findPage(connection, Person.class, 2, key, "status", "created");
+			for (Person p : page.getItems())
+				names.add(p.name);
+			key = page.getNextKey();
+		} while(page.hasNext());
+
+		assertEquals(Arrays.asList("p4", "p2", "p0", "p3", "p1"), names);
+	}
+
+	@Test
+	public void enumsKeepTheirColumnRepresentation() throws Exception {
+		GreenDB.insert(connection, Arrays.asList(
+				new Ticket(1, Person.Status.ACTIVE, Person.Status.BLOCKED),
+				new Ticket(2, Person.Status.BLOCKED, Person.Status.ACTIVE)));
+
+		Statement st = connection.createStatement();
+		try {
+			ResultSet rs = st.executeQuery("SELECT status, level FROM ticket WHERE id = 1");
+			rs.next();
+			assertEquals("ACTIVE", rs.getString(1));
+			assertEquals(1, rs.getInt(2));
+		} finally {
+			st.close();
+		}
+
+		List<Ticket> found = GreenDB.findByColumns(connection, Ticket.class, false, null, new String[] {"level"}, null, Person.Status.ACTIVE);
+		assertEquals(1, found.size());
+		assertEquals(2, found.get(0).id);
+		assertEquals(Person.Status.BLOCKED, found.get(0).status);
+
+		found = GreenDB.findByColumns(connection, Ticket.class, false, null, new String[] {"status", "level"}, null, Person.Status.ACTIVE, Person.Status.BLOCKED);
+		assertEquals(1, found.size());
+		assertEquals(1, found.get(0).id);
+
+		Ticket t = found.get(0);
+		t.level = Person.Status.ACTIVE;
+		GreenDB.update(connection, t);
+		assertEquals(Person.Status.ACTIVE, GreenDB.findByPK(connection, Ticket.class, null, 1).level);
+	}
+
+	@Test
+	public void columnNamesWinOverFieldNames() throws Exception {
+		Renamed r = new Renamed();
+		r.name = "title";
+		r.text = "text";
+		GreenDB.insert(connection, r);
+
+		Renamed found = GreenDB.findAll(connection, Renamed.class).get(0);
+		assertEquals("title", found.name);
+		assertEquals("text", found.text);
+	}
+
+	static List<Person> people(int n) {
+		List<Person> people = new ArrayList<Person>(n);
+		for (int i = -1; ++i < n;)
+			people.add(new Person("p"+i, 20 + i));
+		return people;
+	}
+}
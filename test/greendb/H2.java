@@ -0,0 +1,87 @@
+package greendb;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.jrender.database.DatabaseConnection;
+import com.jrender.database.DatabasePreparedStatement;
+import com.jrender.database.DatabaseStatement;
+
+final class H2 implements ConnectionSource {
+	private final static AtomicInteger databases = new AtomicInteger();
+
+	private final String url;
+	private final Connection keepAlive;
+
+	H2(String... ddl) throws SQLException {
+		this.url = "jdbc:h2:mem:greendb"+databases.incrementAndGet()+";DB_CLOSE_DELAY=-1";
+		this.keepAlive = DriverManager.getConnection(url);
+
+		Statement st = keepAlive.createStatement();
+		try {
+			for (String sql : ddl)
+				st.execute(sql);
+		} finally {
+			st.close();
+		}
+	}
+
+	public DatabaseConnection getConnection() throws SQLException {
+		return wrap(DriverManager.getConnection(url));
+	}
+
+	public void release(DatabaseConnection connection) throws SQLException {
+		connection.close();
+	}
+
+	void execute(String sql) throws SQLException {
+		Statement st = keepAlive.createStatement();
+		try {
+			st.execute(sql);
+		} finally {
+			st.close();
+		}
+	}
+
+	void close() throws SQLException {
+		execute("SHUTDOWN");
+		keepAlive.close();
+	}
+
+	static DatabaseConnection wrap(Connection connection) {
+		return (DatabaseConnection) proxy(DatabaseConnection.class, connection);
+	}
+
+	private static Object proxy(Class<?> type, final Object target) {
+		return Proxy.newProxyInstance(H2.class.getClassLoader(), new Class<?>[] {type}, new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				if(method.getName().equals("equals") && args != null && args.length == 1)
+					return proxy == args[0];
+				if(method.getName().equals("hashCode") && args == null)
+					return System.identityHashCode(proxy);
+
+				Object result;
+				try {
+					result = target.getClass().getMethod(method.getName(), method.getParameterTypes()).invoke(target, args);
+				} catch (InvocationTargetException e) {
+					throw e.getCause();
+				}
+
+				if(method.getReturnType() == DatabasePreparedStatement.class)
+					return proxy(DatabasePreparedStatement.class, (PreparedStatement) result);
+				if(method.getReturnType() == DatabaseStatement.class)
+					return proxy(DatabaseStatement.class, (Statement) result);
+
+				return result;
+			}
+		});
+	}
+}
@@ -0,0 +1,21 @@
+package greendb;
+
+import greendb.annotation.Column;
+import greendb.annotation.Table;
+
+@Table("note")
+public class Note {
+	@Column String owner;
+	@Column String text;
+
+	public Note() {}
+
+	Note(String owner, String text) {
+		this.owner = owner;
+		this.text = text;
+	}
+
+	static String ddl() {
+		return "CREATE TABLE note (owner VARCHAR(64), text VARCHAR(256))";
+	}
+}
@@ -0,0 +1,32 @@
+package greendb;
+
+import java.sql.Timestamp;
+
+import greendb.annotation.Cacheable;
+import greendb.annotation.Column;
+import greendb.annotation.PK;
+import greendb.annotation.Table;
+
+@Table("person")
+@Cacheable
+public class Person {
+	@PK(autoIncrement = true) @Column int id;
+	@Column String name;
+	@Column int age;
+	@Column Timestamp created;
+	@Column Status status;
+
+	public enum Status { ACTIVE, BLOCKED }
+
+	public Person() {}
+
+	Person(String name, int age) {
+		this.name = name;
+		this.age = age;
+		this.status = Status.ACTIVE;
+	}
+
+	static String ddl() {
+		return "CREATE TABLE person (id INT AUTO_INCREMENT PRIMARY KEY, name VARCHAR(64), age INT, created TIMESTAMP, status VARCHAR(16))";
+	}
+}
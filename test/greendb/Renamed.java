@@ -0,0 +1,16 @@
+package greendb;
+
+import greendb.annotation.Column;
+import greendb.annotation.Table;
+
+@Table("renamed")
+public class Renamed {
+	@Column("title") String name;
+	@Column("name") String text;
+
+	public Renamed() {}
+
+	static String ddl() {
+		return "CREATE TABLE renamed (name VARCHAR(64), title VARCHAR(64))";
+	}
+}
@@ -0,0 +1,96 @@
+package greendb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.jrender.database.DatabaseConnection;
+
+public class StatementCacheTest {
+	private H2 db;
+	private DatabaseConnection connection;
+
+	@Before
+	public void open() throws Exception {
+		db = new H2(Person.ddl());
+		connection = db.getConnection();
+		GreenDB.getEntityCache(Person.class).clear();
+	}
+
+	@After
+	public void close() throws Exception {
+		GreenDB.closeStatements(connection);
+		db.release(connection);
+		db.close();
+	}
+
+	@Test
+	public void reusesStatements() throws Exception {
+		Person p = new Person("ana", 30);
+		GreenDB.insert(connection, p);
+
+		StatementCache cache = GreenDB.getStatementCache(connection);
+		long hits = cache.getHits(), misses = cache.getMisses();
+
+		for (int i = -1; ++i < 5;)
+			GreenDB.findByColumns(connection, Person.class, false, null, new String[] {"age"}, null, 30);
+
+		assertEquals(misses + 1, cache.getMisses());
+		assertEquals(hits + 4, cache.getHits());
+		assertTrue(cache.size() > 0);
+	}
+
+	@Test
+	public void closeStatementsDropsCache() throws Exception {
+		GreenDB.findAll(connection, Person.class);
+		StatementCache cache = GreenDB.getStatementCache(connection);
+		assertTrue(cache.size() > 0);
+
+		GreenDB.closeStatements(connection);
+		assertEquals(0, cache.size());
+		assertTrue(cache != GreenDB.getStatementCache(connection));
+	}
+
+	@Test
+	public void concurrentUseOfOneConnection() throws Exception {
+		GreenDB.insert(connection, GreenDBTest.people(8));
+		int size = GreenDB.getStatementCache(connection).size();
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+			for (int t = -1; ++t < 4;) {
+				results.add(executor.submit(new Callable<Integer>() {
+					public Integer call() throws Exception {
+						int found = 0;
+						for (int i = -1; ++i < 200;) {
+							List<Person> l = GreenDB.findByColumns(connection, Person.class, false, null, new String[] {"age"}, null, 20 + i % 8);
+							assertNotNull(l);
+							assertEquals("p"+(i % 8), l.get(0).name);
+							found += l.size();
+						}
+						return found;
+					}
+				}));
+			}
+
+			for (Future<Integer> f : results)
+				assertEquals(200, f.get().intValue());
+		} finally {
+			executor.shutdown();
+		}
+
+		assertEquals(size + 1, GreenDB.getStatementCache(connection).size());
+	}
+}
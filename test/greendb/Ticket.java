@@ -0,0 +1,25 @@
+package greendb;
+
+import greendb.annotation.Column;
+import greendb.annotation.Ordinal;
+import greendb.annotation.PK;
+import greendb.annotation.Table;
+
+@Table("ticket")
+public class Ticket {
+	@PK @Column int id;
+	@Column Person.Status status;
+	@Ordinal @Column Person.Status level;
+
+	public Ticket() {}
+
+	Ticket(int id, Person.Status status, Person.Status level) {
+		this.id = id;
+		this.status = status;
+		this.level = level;
+	}
+
+	static String ddl() {
+		return "CREATE TABLE ticket (id INT PRIMARY KEY, status VARCHAR(16), level INT)";
+	}
+}